@@ -12,15 +12,21 @@ import androidx.annotation.NonNull;
 import androidx.fragment.app.Fragment;
 
 import com.example.bookapp.adapters.AdapterPdfUser;
+import com.example.bookapp.adapters.LoadMoreListener;
+import com.example.bookapp.adapters.ThumbnailPrefetcher;
+import com.example.bookapp.cache.BookCache;
 import com.example.bookapp.databinding.FragmentBookUserBinding;
+import com.example.bookapp.models.ChildEventList;
 import com.example.bookapp.models.ModelPdf;
 import com.google.firebase.database.DataSnapshot;
 import com.google.firebase.database.DatabaseError;
 import com.google.firebase.database.DatabaseReference;
 import com.google.firebase.database.FirebaseDatabase;
+import com.google.firebase.database.Query;
 import com.google.firebase.database.ValueEventListener;
 
 import java.util.ArrayList;
+import java.util.List;
 
 /**
  * A simple {@link Fragment} subclass.
@@ -36,6 +42,8 @@ public class BookUserFragment extends Fragment {
 
     private ArrayList<ModelPdf> pdfArrayList;
     private AdapterPdfUser adapterPdfUser;
+    //books of most viewed/downloaded and category tabs, kept current by child events
+    private ChildEventList<ModelPdf> bookList;
 
     //view binding
     private FragmentBookUserBinding binding;
@@ -72,6 +80,15 @@ public class BookUserFragment extends Fragment {
         // Inflate/bind the layout for this fragment
         binding = FragmentBookUserBinding.inflate(LayoutInflater.from(getContext()), container, false);
 
+        //warm thumbnails of rows user scrolls towards
+        binding.booksRv.addOnScrollListener(new ThumbnailPrefetcher(binding.booksRv,
+                Constants.PREFETCH_ROWS, Constants.PREFETCH_MAX_CONCURRENT, Constants.PREFETCH_FLING_VELOCITY_DP));
+
+        //one adapter for the life of this view, every tab feeds it whole result sets
+        pdfArrayList = new ArrayList<>();
+        adapterPdfUser = new AdapterPdfUser(getContext(), pdfArrayList);
+        binding.booksRv.setAdapter(adapterPdfUser);
+
         Log.d(TAG, "onCreateView: Category: " + category);
         if (category.equals("All")) {
             //load all books
@@ -114,98 +131,122 @@ public class BookUserFragment extends Fragment {
         return binding.getRoot();
     }
 
-    private void loadAllBooks() {
-        //init arrayList
-        pdfArrayList = new ArrayList<>();
-
-        DatabaseReference ref = FirebaseDatabase.getInstance().getReference("Books");
-        ref.addValueEventListener(new ValueEventListener() {
-            @Override
-            public void onDataChange(@NonNull DataSnapshot snapshot) {
-                //clear list before starting adding data to it
-                pdfArrayList.clear();
-
-                for (DataSnapshot ds : snapshot.getChildren()) {
-                    //get data
-                    ModelPdf model = ds.getValue(ModelPdf.class);
-                    //add to list
-                    pdfArrayList.add(model);
-
-                    //setup adapter
-                    adapterPdfUser = new AdapterPdfUser(getContext(), pdfArrayList);
-                    //set adapter to recycler view
-                    binding.booksRv.setAdapter(adapterPdfUser);
-                }
-            }
+    //paging of All tab, key of last loaded book, a page is loading, no books after last page
+    private String lastBookKey = null;
+    private boolean loadingPage = false;
+    private boolean allBooksLoaded = false;
+    //view pages are loaded for, a page arriving after its view is gone is dropped
+    private int pageGeneration = 0;
 
+    private void loadAllBooks() {
+        //view of this fragment may be created again, its list starts from first page
+        //and a page still loading for the old view is dropped, not appended to this one
+        pageGeneration++;
+        lastBookKey = null;
+        loadingPage = false;
+        allBooksLoaded = false;
+
+        //next page is loaded as user nears end of list
+        binding.booksRv.addOnScrollListener(new LoadMoreListener(Constants.BOOKS_LOAD_MORE_ROWS, new LoadMoreListener.Callback() {
             @Override
-            public void onCancelled(@NonNull DatabaseError error) {
-
+            public void onLoadMore() {
+                loadAllBooksPage();
             }
-        });
+        }));
+        loadAllBooksPage();
     }
 
-    private void loadMostViewedDownloadedBooks(String orderBy) {
-        //init arrayList
-        pdfArrayList = new ArrayList<>();
+    private void loadAllBooksPage() {
+        if (loadingPage || allBooksLoaded) {
+            return;
+        }
+        loadingPage = true;
+        int generation = pageGeneration;
 
-        DatabaseReference ref = FirebaseDatabase.getInstance().getReference("Books");
-        ref.orderByChild(orderBy).limitToLast(10) //load 10 most viewed/downloaded books
-                .addValueEventListener(new ValueEventListener() {
+        //books are ordered by id (upload timestamp), page starts after last loaded one
+        Query query = FirebaseDatabase.getInstance().getReference("Books").orderByKey();
+        if (lastBookKey != null) {
+            query = query.startAfter(lastBookKey);
+        }
+        query.limitToFirst(Constants.BOOKS_PAGE_SIZE)
+                .addListenerForSingleValueEvent(new ValueEventListener() {
                     @Override
                     public void onDataChange(@NonNull DataSnapshot snapshot) {
-                        //clear list before starting adding data to it
-                        pdfArrayList.clear();
+                        if (generation != pageGeneration || binding == null) {
+                            return;
+                        }
+                        loadingPage = false;
 
+                        int start = pdfArrayList.size();
                         for (DataSnapshot ds : snapshot.getChildren()) {
                             //get data
                             ModelPdf model = ds.getValue(ModelPdf.class);
+                            //favorites and other id lookups reuse it
+                            BookCache.getInstance().put(model);
                             //add to list
                             pdfArrayList.add(model);
-
-                            //setup adapter
-                            adapterPdfUser = new AdapterPdfUser(getContext(), pdfArrayList);
-                            //set adapter to recycler view
-                            binding.booksRv.setAdapter(adapterPdfUser);
+                            lastBookKey = ds.getKey();
+                        }
+                        int added = pdfArrayList.size() - start;
+                        if (added < Constants.BOOKS_PAGE_SIZE) {
+                            allBooksLoaded = true;
                         }
+                        Log.d(TAG, "onDataChange: page of " + added + " books, " + pdfArrayList.size() + " loaded" + (allBooksLoaded ? ", all books loaded" : ""));
+
+                        //new rows are inserted, search is applied to them too
+                        adapterPdfUser.setBooks(pdfArrayList);
                     }
 
                     @Override
                     public void onCancelled(@NonNull DatabaseError error) {
-
+                        //tried again on next scroll
+                        Log.d(TAG, "onCancelled: failed to load page due to " + error.getMessage());
+                        if (generation == pageGeneration) {
+                            loadingPage = false;
+                        }
                     }
                 });
     }
 
-    private void loadCategorizedBooks() {
-        //init arrayList
-        pdfArrayList = new ArrayList<>();
-
+    private void loadMostViewedDownloadedBooks(String orderBy) {
+        //load 10 most viewed/downloaded books, kept current one book at a time
         DatabaseReference ref = FirebaseDatabase.getInstance().getReference("Books");
-        ref.orderByChild("categoryId").equalTo(categoryId)
-                .addValueEventListener(new ValueEventListener() {
-                    @Override
-                    public void onDataChange(@NonNull DataSnapshot snapshot) {
-                        //clear list before starting adding data to it
-                        pdfArrayList.clear();
-
-                        for (DataSnapshot ds : snapshot.getChildren()) {
-                            //get data
-                            ModelPdf model = ds.getValue(ModelPdf.class);
-                            //add to list
-                            pdfArrayList.add(model);
+        listenForBooks(ref.orderByChild(orderBy).limitToLast(10));
+    }
 
-                            //setup adapter
-                            adapterPdfUser = new AdapterPdfUser(getContext(), pdfArrayList);
-                            //set adapter to recycler view
-                            binding.booksRv.setAdapter(adapterPdfUser);
-                        }
-                    }
+    private void loadCategorizedBooks() {
+        DatabaseReference ref = FirebaseDatabase.getInstance().getReference("Books");
+        listenForBooks(ref.orderByChild("categoryId").equalTo(categoryId));
+    }
 
-                    @Override
-                    public void onCancelled(@NonNull DatabaseError error) {
+    private void listenForBooks(Query query) {
+        bookList = new ChildEventList<>(query, ModelPdf.class);
+        bookList.start(new ChildEventList.Listener<ModelPdf>() {
+            @Override
+            public void onListChanged(List<ModelPdf> books) {
+                for (ModelPdf model : books) {
+                    //favorites and other id lookups reuse it
+                    BookCache.getInstance().put(model);
+                }
+                pdfArrayList.clear();
+                pdfArrayList.addAll(books);
+                //only rows of changed books are bound again
+                adapterPdfUser.setBooks(pdfArrayList);
+            }
+        });
+    }
 
-                    }
-                });
+    @Override
+    public void onDestroyView() {
+        super.onDestroyView();
+        //stop following books of this tab
+        if (bookList != null) {
+            bookList.stop();
+            bookList = null;
+        }
+        //page still loading belongs to this view, drop it
+        pageGeneration++;
+        loadingPage = false;
+        binding = null;
     }
-}
\ No newline at end of file
+}
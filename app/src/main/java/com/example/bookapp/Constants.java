@@ -2,5 +2,56 @@ package com.example.bookapp;
 
 public class Constants {
 
-    public static final long MAX_BYTES_PDF = 50000000; //50MB
+    //byte budgets of the first page thumbnail cache
+    public static final int MAX_BYTES_THUMBNAIL_MEMORY = 8 * 1024 * 1024; //8MB
+    public static final long MAX_BYTES_THUMBNAIL_DISK = 30 * 1024 * 1024; //30MB
+    //width of rendered thumbnails in dp, same as the pdf box in book rows
+    public static final int THUMBNAIL_WIDTH_DP = 100;
+
+    //thumbnail prefetch of book lists, rows ahead of visible ones, max thumbnail loads at once,
+    //and scroll speed above which nothing is prefetched because user flies past the rows
+    public static final int PREFETCH_ROWS = 6;
+    public static final int PREFETCH_MAX_CONCURRENT = 3;
+    public static final int PREFETCH_FLING_VELOCITY_DP = 2500; //dp per second
+
+    //pages kept rendered in the reader (previous, current, next) and memory budget of their bitmaps
+    public static final int READER_CACHED_PAGES = 3;
+    public static final long MAX_BYTES_READER_PAGES = 24 * 1024 * 1024; //24MB
+
+    //books read per page of the All tab, next page is loaded when user is this many rows from the end
+    public static final int BOOKS_PAGE_SIZE = 20;
+    public static final int BOOKS_LOAD_MORE_ROWS = 5;
+
+    //Books records kept in memory for lookups by id, e.g. favorites
+    public static final int MAX_BOOKS_CACHED = 200;
+
+    //comment authors kept in memory, each one is watched for profile changes
+    public static final int MAX_USERS_CACHED = 100;
+
+    //pdfs of a batch upload sent at the same time
+    public static final int BATCH_UPLOAD_CONCURRENCY = 3;
+
+    //books read per page and processed at once by the metadata backfill
+    public static final int BACKFILL_PAGE_SIZE = 20;
+    public static final int BACKFILL_CONCURRENCY = 2;
+
+    //buffered view counts are sent after this long, or at once when this many books have pending counts
+    public static final long COUNTER_FLUSH_INTERVAL_MS = 60 * 1000; //1 minute
+    public static final int COUNTER_MAX_PENDING = 20;
+    //shards view counts are spread over, 1 writes viewsCount directly; while the admin dashboard is open, shards of
+    //all books are folded into viewsCount this often, reading this many books with shards at a time
+    public static final int COUNTER_SHARDS = 8;
+    public static final long COUNTER_COMPACT_INTERVAL_MS = 10 * 60 * 1000; //10 minutes
+    public static final int COUNTER_COMPACT_PAGE_SIZE = 50;
+
+    //comments read per page on the detail page, older page is loaded when user scrolls within this distance of the end
+    public static final int COMMENTS_PAGE_SIZE = 20;
+    public static final int COMMENTS_LOAD_MORE_DP = 200;
+
+    //books read per page by the comments migration, their comments are moved this many per update
+    public static final int COMMENTS_MIGRATION_PAGE_SIZE = 20;
+    public static final int COMMENTS_MIGRATION_BATCH_SIZE = 500;
+
+    //disk quota of the local book store, least recently used books are evicted above it
+    public static final long MAX_BYTES_BOOK_STORE = 300 * 1024 * 1024; //300MB
 }
@@ -3,16 +3,28 @@ package com.example.bookapp;
 import android.app.Application;
 import android.app.ProgressDialog;
 import android.content.Context;
+import android.graphics.Bitmap;
 import android.os.Environment;
 import android.text.format.DateFormat;
 import android.util.Log;
 import android.view.View;
+import android.widget.ImageView;
 import android.widget.ProgressBar;
 import android.widget.TextView;
 import android.widget.Toast;
 
 import androidx.annotation.NonNull;
 
+import com.bumptech.glide.Glide;
+import com.example.bookapp.cache.BookCache;
+import com.example.bookapp.cache.BookStore;
+import com.example.bookapp.cache.CategoryCache;
+import com.example.bookapp.cache.RequestCoalescer;
+import com.example.bookapp.cache.ThumbnailCache;
+import com.example.bookapp.cache.UserCache;
+import com.example.bookapp.counters.CounterBuffer;
+import com.example.bookapp.counters.CounterValues;
+import com.example.bookapp.upload.BatchUploadQueue;
 import com.github.barteksc.pdfviewer.PDFView;
 import com.github.barteksc.pdfviewer.listener.OnErrorListener;
 import com.github.barteksc.pdfviewer.listener.OnLoadCompleteListener;
@@ -24,26 +36,66 @@ import com.google.firebase.database.DataSnapshot;
 import com.google.firebase.database.DatabaseError;
 import com.google.firebase.database.DatabaseReference;
 import com.google.firebase.database.FirebaseDatabase;
-import com.google.firebase.database.ValueEventListener;
+import com.google.firebase.database.MutableData;
+import com.google.firebase.database.Transaction;
+import com.google.firebase.storage.FileDownloadTask;
 import com.google.firebase.storage.FirebaseStorage;
+import com.google.firebase.storage.OnProgressListener;
 import com.google.firebase.storage.StorageMetadata;
 import com.google.firebase.storage.StorageReference;
 
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.util.Calendar;
 import java.util.HashMap;
 import java.util.Locale;
 
-import static com.example.bookapp.Constants.MAX_BYTES_PDF;
-
 //application class runs before your launcher activity
 public class MyApplication extends Application {
     public static final String TAG_DOWNLOAD = "DOWNLOAD_TAG";
 
+    //single flight of row loads, identical concurrent requests share one storage request
+    private static final RequestCoalescer<StorageMetadata> metadataRequests = new RequestCoalescer<>("metadata");
+    private static final RequestCoalescer<Bitmap> thumbnailRequests = new RequestCoalescer<>("thumbnail");
+
     @Override
     public void onCreate() {
         super.onCreate();
+
+        //init thumbnail cache, thumbnails are rendered at the width of the pdf box in book rows
+        int thumbnailWidthPx = (int) (Constants.THUMBNAIL_WIDTH_DP * getResources().getDisplayMetrics().density);
+        ThumbnailCache.init(this, Constants.MAX_BYTES_THUMBNAIL_MEMORY, Constants.MAX_BYTES_THUMBNAIL_DISK, thumbnailWidthPx);
+        //init local store of downloaded books
+        BookStore.init(this, Constants.MAX_BYTES_BOOK_STORE);
+        //init cache of books looked up by id
+        BookCache.init(Constants.MAX_BOOKS_CACHED);
+        //init cache of comment authors
+        UserCache.init(Constants.MAX_USERS_CACHED);
+        //init queue of batch book uploads, uploads left from last run continue
+        BatchUploadQueue.init(this, Constants.BATCH_UPLOAD_CONCURRENCY);
+        //init buffer of view counts, counts left from last run are sent
+        CounterBuffer.init(this, Constants.COUNTER_FLUSH_INTERVAL_MS, Constants.COUNTER_MAX_PENDING, Constants.COUNTER_SHARDS);
+    }
+
+    @Override
+    public void onTrimMemory(int level) {
+        super.onTrimMemory(level);
+        //app went to background and may be killed, send buffered counts now
+        if (level >= TRIM_MEMORY_UI_HIDDEN) {
+            CounterBuffer.getInstance().flush();
+        }
+    }
+
+    //stable row id of a list item from its db key, keys are timestamps so they are unique numbers
+    public static long getStableId(String key) {
+        try {
+            return Long.parseLong(key);
+        } catch (NumberFormatException e) {
+            return key == null ? 0 : key.hashCode();
+        }
     }
 
     //created a static method to convert timestamp to proper date format, so we can use it everywhere in project
@@ -75,13 +127,20 @@ public class MyApplication extends Application {
                         Log.d(TAG, "onSuccess: Deleted from Storage");
 
                         Log.d(TAG, "onSuccess: Now deleting info from db");
-                        DatabaseReference ref = FirebaseDatabase.getInstance().getReference("Books");
-                        ref.child(bookId)
-                                .removeValue()
+                        //book, its comments and its counter shards are removed together
+                        HashMap<String, Object> removals = new HashMap<>();
+                        removals.put("Books/" + bookId, null);
+                        removals.put("Comments/" + bookId, null);
+                        removals.put("Counters/" + bookId, null);
+                        FirebaseDatabase.getInstance().getReference()
+                                .updateChildren(removals)
                                 .addOnSuccessListener(new OnSuccessListener<Void>() {
                                     @Override
                                     public void onSuccess(Void unused) {
                                         Log.d(TAG, "onSuccess: deleted from db too");
+                                        BookCache.getInstance().invalidate(bookId);
+                                        CounterBuffer.getInstance().drop(bookId);
+                                        deleteBookCovers(bookId);
                                         progressDialog.dismiss();
                                         Toast.makeText(context, "Book Deleted Successfully...", Toast.LENGTH_SHORT).show();
                                     }
@@ -105,153 +164,408 @@ public class MyApplication extends Application {
                 });
     }
 
-    public static void loadPdfSize(String pdfUrl, String pdfTitle, TextView sizeTv) {
+    private static void deleteBookCovers(String bookId) {
+        String TAG = "DELETE_BOOK_TAG";
+        //covers are stored next to the pdf, Books/<bookId>_cover_small and Books/<bookId>_cover_large
+        //books uploaded before covers existed don't have them, so failures are only logged
+        String[] coverPaths = {"Books/" + bookId + "_cover_small", "Books/" + bookId + "_cover_large"};
+        for (String coverPath : coverPaths) {
+            FirebaseStorage.getInstance().getReference(coverPath)
+                    .delete()
+                    .addOnFailureListener(new OnFailureListener() {
+                        @Override
+                        public void onFailure(@NonNull Exception e) {
+                            Log.d(TAG, "onFailure: " + coverPath + " not deleted due to " + e.getMessage());
+                        }
+                    });
+        }
+    }
+
+    public static void loadPdfSize(long sizeBytes, String pdfUrl, String pdfTitle, TextView sizeTv, RowLoadHandle handle) {
         String TAG = "PDF_SIZE_TAG";
-        //using url we can get file and its metadata from firebase storage
+        //size stored on the book record at upload, no storage request needed
+        if (sizeBytes > 0) {
+            showPdfSize(sizeTv, sizeBytes);
+            return;
+        }
 
-        StorageReference ref = FirebaseStorage.getInstance().getReferenceFromUrl(pdfUrl);
-        ref.getMetadata()
-                .addOnSuccessListener(new OnSuccessListener<StorageMetadata>() {
-                    @Override
-                    public void onSuccess(StorageMetadata storageMetadata) {
-                        //get size in bytes
-                        double bytes = storageMetadata.getSizeBytes();
-                        Log.d(TAG, "onSuccess: " + pdfTitle + " " + bytes);
-
-                        //convert bytes to KB, MB
-                        double kb = bytes / 1024;
-                        double mb = kb / 1024;
-
-                        if (mb >= 1) {
-                            sizeTv.setText(String.format("%.2f", mb) + " MB");
-                        } else if (kb >= 1) {
-                            sizeTv.setText(String.format("%.2f", kb) + " KB");
-                        } else {
-                            sizeTv.setText(String.format("%.2f", bytes) + " bytes");
-                        }
-                    }
-                })
-                .addOnFailureListener(new OnFailureListener() {
-                    @Override
-                    public void onFailure(@NonNull Exception e) {
-                        //failed getting metadata
-                        Log.d(TAG, "onFailure: " + e.getMessage());
-                    }
-                });
+        //older book without stored size, using url we can get file and its metadata from firebase storage
+        //rows bound again while a metadata request for same url is running share that request
+        String boundId = RowLoadHandle.boundIdOf(handle);
+
+        RequestCoalescer.Callback<StorageMetadata> callback = new RequestCoalescer.Callback<StorageMetadata>() {
+            @Override
+            public void onResult(StorageMetadata storageMetadata) {
+                //row was bound to another book meanwhile
+                if (!RowLoadHandle.isCurrent(handle, boundId)) {
+                    return;
+                }
+
+                //get size in bytes
+                double bytes = storageMetadata.getSizeBytes();
+                Log.d(TAG, "onResult: " + pdfTitle + " " + bytes);
+                showPdfSize(sizeTv, bytes);
+            }
+
+            @Override
+            public void onFailure(Exception e) {
+                //failed getting metadata
+                Log.d(TAG, "onFailure: " + e.getMessage());
+            }
+        };
+
+        metadataRequests.request(pdfUrl, new RequestCoalescer.Loader<StorageMetadata>() {
+            @Override
+            public Runnable load(String key, RequestCoalescer.Callback<StorageMetadata> done) {
+                StorageReference ref = FirebaseStorage.getInstance().getReferenceFromUrl(key);
+                ref.getMetadata()
+                        .addOnSuccessListener(new OnSuccessListener<StorageMetadata>() {
+                            @Override
+                            public void onSuccess(StorageMetadata storageMetadata) {
+                                done.onResult(storageMetadata);
+                            }
+                        })
+                        .addOnFailureListener(new OnFailureListener() {
+                            @Override
+                            public void onFailure(@NonNull Exception e) {
+                                done.onFailure(e);
+                            }
+                        });
+                //metadata request is tiny, it can't be stopped, its result is just dropped
+                return null;
+            }
+        }, callback);
+
+        if (handle != null) {
+            handle.addCanceller(new Runnable() {
+                @Override
+                public void run() {
+                    metadataRequests.cancel(pdfUrl, callback);
+                }
+            });
+        }
+    }
+
+    private static void showPdfSize(TextView sizeTv, double bytes) {
+        //convert bytes to KB, MB
+        double kb = bytes / 1024;
+        double mb = kb / 1024;
+
+        if (mb >= 1) {
+            sizeTv.setText(String.format("%.2f", mb) + " MB");
+        } else if (kb >= 1) {
+            sizeTv.setText(String.format("%.2f", kb) + " KB");
+        } else {
+            sizeTv.setText(String.format("%.2f", bytes) + " bytes");
+        }
+    }
+
+    public static RequestCoalescer<StorageMetadata> getMetadataRequests() {
+        return metadataRequests;
+    }
+
+    public static RequestCoalescer<Bitmap> getThumbnailRequests() {
+        return thumbnailRequests;
     }
 
     public static void loadPdfFromUrlSinglePage(String pdfUrl, String pdfTitle, PDFView pdfView, ProgressBar progressBar, TextView pagesTv) {
         String TAG = "PDF_LOAD_SINGLE_TAG";
-        //using url we can get file and its metadata from firebase storage
+        //get file through local book store, downloaded only if not stored yet
+
+        BookStore.getInstance().fetch(pdfUrl, new DownloadCallback() {
+            @Override
+            public void onProgress(long bytesTransferred, long totalBytes) {
+
+            }
+
+            @Override
+            public void onDownloaded(File file) {
+                Log.d(TAG, "onDownloaded: " + pdfTitle + " successfully got the file");
+
+                //set to pdf view
+                pdfView.fromFile(file)
+                        .pages(0) //show only first page
+                        .spacing(0)
+                        .swipeHorizontal(false)
+                        .enableSwipe(false)
+                        .onError(new OnErrorListener() {
+                            @Override
+                            public void onError(Throwable t) {
+                                //hide progress
+                                progressBar.setVisibility(View.INVISIBLE);
+                                Log.d(TAG, "onError: " + t.getMessage());
+                            }
+                        })
+                        .onPageError(new OnPageErrorListener() {
+                            @Override
+                            public void onPageError(int page, Throwable t) {
+                                //hide progress
+                                progressBar.setVisibility(View.INVISIBLE);
+                                Log.d(TAG, "onPageError: " + t.getMessage());
+                            }
+                        })
+                        .onLoad(new OnLoadCompleteListener() {
+                            @Override
+                            public void loadComplete(int nbPages) {
+                                //pdf loaded
+                                //hide progress
+                                progressBar.setVisibility(View.INVISIBLE);
+                                Log.d(TAG, "loadComplete: pdf loaded");
+
+                                //if pagesTv param is not null then set page numbers
+                                if (pagesTv != null) {
+                                    pagesTv.setText(""+nbPages);
+                                }
+                            }
+                        })
+                        .load();
+            }
+
+            @Override
+            public void onFailure(Exception e) {
+                //hide progress
+                progressBar.setVisibility(View.INVISIBLE);
+                Log.d(TAG, "onFailure: failed getting file from url due to: " + e.getMessage());
+            }
+        });
+    }
 
-        StorageReference ref = FirebaseStorage.getInstance().getReferenceFromUrl(pdfUrl);
-        ref.getBytes(MAX_BYTES_PDF)
-                .addOnSuccessListener(new OnSuccessListener<byte[]>() {
-                    @Override
-                    public void onSuccess(byte[] bytes) {
-                        Log.d(TAG, "onSuccess: " + pdfTitle + " successfully got the file");
-
-                        //set to pdf view
-                        pdfView.fromBytes(bytes)
-                                .pages(0) //show only first page
-                                .spacing(0)
-                                .swipeHorizontal(false)
-                                .enableSwipe(false)
-                                .onError(new OnErrorListener() {
-                                    @Override
-                                    public void onError(Throwable t) {
-                                        //hide progress
-                                        progressBar.setVisibility(View.INVISIBLE);
-                                        Log.d(TAG, "onError: " + t.getMessage());
-                                    }
-                                })
-                                .onPageError(new OnPageErrorListener() {
-                                    @Override
-                                    public void onPageError(int page, Throwable t) {
-                                        //hide progress
-                                        progressBar.setVisibility(View.INVISIBLE);
-                                        Log.d(TAG, "onPageError: " + t.getMessage());
-                                    }
-                                })
-                                .onLoad(new OnLoadCompleteListener() {
-                                    @Override
-                                    public void loadComplete(int nbPages) {
-                                        //pdf loaded
-                                        //hide progress
-                                        progressBar.setVisibility(View.INVISIBLE);
-                                        Log.d(TAG, "loadComplete: pdf loaded");
-
-                                        //if pagesTv param is not null then set page numbers
-                                        if (pagesTv != null) {
-                                            pagesTv.setText(""+nbPages);
-                                        }
-                                    }
-                                })
-                                .load();
-                    }
-                })
-                .addOnFailureListener(new OnFailureListener() {
-                    @Override
-                    public void onFailure(@NonNull Exception e) {
-                        //hide progress
-                        progressBar.setVisibility(View.INVISIBLE);
-                        Log.d(TAG, "onFailure: failed getting file from url due to: " + e.getMessage());
-                    }
-                });
+    public static void loadPdfThumbnail(String bookId, String coverUrl, String pdfUrl, String pdfTitle, ImageView thumbnailIv, ProgressBar progressBar, RowLoadHandle handle) {
+        String TAG = "PDF_THUMBNAIL_TAG";
+
+        //books uploaded with a cover, load small cover image instead of the pdf
+        if (coverUrl != null && !coverUrl.isEmpty() && !coverUrl.equals("null")) {
+            progressBar.setVisibility(View.INVISIBLE);
+            Glide.with(thumbnailIv)
+                    .load(coverUrl)
+                    .into(thumbnailIv);
+            return;
+        }
+
+        //row may have shown a cover before being recycled, stop glide from setting it again
+        Glide.with(thumbnailIv).clear(thumbnailIv);
+
+        //show first page of pdf from thumbnail cache, pdf is downloaded and rendered only on cache miss
+        String key = ThumbnailCache.keyFor(bookId, pdfUrl);
+        ThumbnailCache thumbnailCache = ThumbnailCache.getInstance();
+
+        //memory hit, show without any async work
+        Bitmap cached = thumbnailCache.getFromMemory(key);
+        if (cached != null) {
+            thumbnailIv.setImageBitmap(cached);
+            progressBar.setVisibility(View.INVISIBLE);
+            return;
+        }
+
+        thumbnailIv.setImageBitmap(null);
+        progressBar.setVisibility(View.VISIBLE);
+        //rows bound again while same thumbnail is loading share that load
+        RequestCoalescer.Callback<Bitmap> callback = new RequestCoalescer.Callback<Bitmap>() {
+            @Override
+            public void onResult(Bitmap bitmap) {
+                //row was bound to another book meanwhile
+                if (!RowLoadHandle.isCurrent(handle, bookId)) {
+                    return;
+                }
+                //hide progress
+                progressBar.setVisibility(View.INVISIBLE);
+                thumbnailIv.setImageBitmap(bitmap);
+            }
+
+            @Override
+            public void onFailure(Exception e) {
+                if (RowLoadHandle.isCurrent(handle, bookId)) {
+                    //hide progress
+                    progressBar.setVisibility(View.INVISIBLE);
+                }
+                Log.d(TAG, "onFailure: " + pdfTitle + " " + e.getMessage());
+            }
+        };
+
+        thumbnailRequests.request(key, newThumbnailLoader(pdfUrl, pdfTitle), callback);
+
+        if (handle != null) {
+            handle.addCanceller(new Runnable() {
+                @Override
+                public void run() {
+                    thumbnailRequests.cancel(key, callback);
+                }
+            });
+        }
     }
 
-    public static void loadCategory(String categoryId, TextView categoryTv) {
-        //get category using categoryId
+    public static void prefetchPdfThumbnail(String bookId, String pdfUrl, String pdfTitle) {
+        String TAG = "PDF_THUMBNAIL_TAG";
+        //warm thumbnail cache for a row not on screen yet, a row bound meanwhile joins this load
 
-        DatabaseReference ref = FirebaseDatabase.getInstance().getReference("Categories");
-        ref.child(categoryId)
-                .addListenerForSingleValueEvent(new ValueEventListener() {
-                    @Override
-                    public void onDataChange(@NonNull DataSnapshot snapshot) {
-                        //get category
-                        String category = "" + snapshot.child("category").getValue();
+        String key = ThumbnailCache.keyFor(bookId, pdfUrl);
+        if (ThumbnailCache.getInstance().getFromMemory(key) != null) {
+            return;
+        }
+        thumbnailRequests.request(key, newThumbnailLoader(pdfUrl, pdfTitle), new RequestCoalescer.Callback<Bitmap>() {
+            @Override
+            public void onResult(Bitmap bitmap) {
+                Log.d(TAG, "onResult: prefetched " + pdfTitle);
+            }
+
+            @Override
+            public void onFailure(Exception e) {
+                Log.d(TAG, "onFailure: prefetch of " + pdfTitle + " failed due to " + e.getMessage());
+            }
+        });
+    }
 
-                        //set to category text view
-                        categoryTv.setText(category);
-                    }
+    private static RequestCoalescer.Loader<Bitmap> newThumbnailLoader(String pdfUrl, String pdfTitle) {
+        return new RequestCoalescer.Loader<Bitmap>() {
+            @Override
+            public Runnable load(String key, RequestCoalescer.Callback<Bitmap> done) {
+                return loadThumbnailBitmap(key, pdfUrl, pdfTitle, done);
+            }
+        };
+    }
 
+    private static Runnable loadThumbnailBitmap(String key, String pdfUrl, String pdfTitle, RequestCoalescer.Callback<Bitmap> done) {
+        String TAG = "PDF_THUMBNAIL_TAG";
+        ThumbnailCache thumbnailCache = ThumbnailCache.getInstance();
+        //set when no row waits for this thumbnail anymore
+        boolean[] cancelled = {false};
+
+        DownloadCallback bookCallback = new DownloadCallback() {
+            @Override
+            public void onProgress(long bytesTransferred, long totalBytes) {
+
+            }
+
+            @Override
+            public void onDownloaded(File file) {
+                if (cancelled[0]) {
+                    return;
+                }
+                Log.d(TAG, "onDownloaded: " + pdfTitle + " successfully got the file");
+                thumbnailCache.renderAndPut(key, file, new ThumbnailCache.Callback() {
                     @Override
-                    public void onCancelled(@NonNull DatabaseError error) {
-
+                    public void onResult(Bitmap bitmap) {
+                        if (bitmap != null) {
+                            done.onResult(bitmap);
+                        } else {
+                            done.onFailure(new Exception("Failed to render first page"));
+                        }
                     }
                 });
+            }
+
+            @Override
+            public void onFailure(Exception e) {
+                Log.d(TAG, "onFailure: failed getting file from url due to: " + e.getMessage());
+                done.onFailure(e);
+            }
+        };
+
+        thumbnailCache.get(key, new ThumbnailCache.Callback() {
+            @Override
+            public void onResult(Bitmap bitmap) {
+                if (bitmap != null) {
+                    //disk hit
+                    Log.d(TAG, "onResult: " + pdfTitle + " thumbnail from disk");
+                    done.onResult(bitmap);
+                    return;
+                }
+                if (cancelled[0]) {
+                    return;
+                }
+
+                //miss, get pdf from book store and render its first page
+                BookStore.getInstance().fetch(pdfUrl, bookCallback);
+            }
+        });
+
+        return new Runnable() {
+            @Override
+            public void run() {
+                //stop download of the book, unless reader or another load still waits for it
+                cancelled[0] = true;
+                BookStore.getInstance().cancel(pdfUrl, bookCallback);
+            }
+        };
+    }
+
+    public static void loadCategory(String categoryId, TextView categoryTv, RowLoadHandle handle) {
+        //get category name from process wide dictionary, no db read per row
+        String boundId = RowLoadHandle.boundIdOf(handle);
+
+        CategoryCache.Callback callback = new CategoryCache.Callback() {
+            @Override
+            public void onName(String name) {
+                //row was bound to another book meanwhile
+                if (!RowLoadHandle.isCurrent(handle, boundId)) {
+                    return;
+                }
+
+                //set to category text view
+                categoryTv.setText(name == null ? "" : name);
+            }
+        };
+        CategoryCache.getInstance().get(categoryId, callback);
+
+        if (handle != null) {
+            handle.addCanceller(new Runnable() {
+                @Override
+                public void run() {
+                    CategoryCache.getInstance().cancel(categoryId, callback);
+                }
+            });
+        }
     }
 
     public static void incrementBookViewCount(String bookId) {
-        // 1) Get book views count
-        DatabaseReference ref = FirebaseDatabase.getInstance().getReference("Books");
-        ref.child(bookId)
-                .addListenerForSingleValueEvent(new ValueEventListener() {
-                    @Override
-                    public void onDataChange(@NonNull DataSnapshot snapshot) {
-                        //get data
-                        String viewsCount = "" + snapshot.child("viewsCount").getValue();
-                        //in case of null replace with zero
-                        if (viewsCount.equals("") || viewsCount.equals(null)) {
-                            viewsCount = "0";
-                        }
+        //buffered, views of many books are sent together as server increments
+        CounterBuffer.getInstance().increment(bookId, "viewsCount");
+    }
 
-                        //2) Increment views count
-                        long newViewsCount = Long.parseLong(viewsCount) + 1;
+    public interface DownloadCallback {
+        //all called on main thread
+        void onProgress(long bytesTransferred, long totalBytes);
 
-                        HashMap<String, Object> hashMap = new HashMap<>();
-                        hashMap.put("viewsCount", newViewsCount);
+        void onDownloaded(File file);
 
-                        DatabaseReference reference = FirebaseDatabase.getInstance().getReference("Books");
-                        reference.child(bookId)
-                                .updateChildren(hashMap);
-                    }
+        void onFailure(Exception e);
+    }
 
-                    @Override
-                    public void onCancelled(@NonNull DatabaseError error) {
+    public static FileDownloadTask downloadPdfToFile(String pdfUrl, File destFile, DownloadCallback callback) {
+        //firebase streams the file to disk in chunks, so heap use doesn't depend on book size
+        //download into .part file first, so an interrupted download never looks like a complete book
+        File partFile = new File(destFile.getPath() + ".part");
+        destFile.getParentFile().mkdirs();
 
+        StorageReference storageReference = FirebaseStorage.getInstance().getReferenceFromUrl(pdfUrl);
+        FileDownloadTask downloadTask = storageReference.getFile(partFile);
+        downloadTask
+                .addOnProgressListener(new OnProgressListener<FileDownloadTask.TaskSnapshot>() {
+                    @Override
+                    public void onProgress(@NonNull FileDownloadTask.TaskSnapshot snapshot) {
+                        callback.onProgress(snapshot.getBytesTransferred(), snapshot.getTotalByteCount());
+                    }
+                })
+                .addOnSuccessListener(new OnSuccessListener<FileDownloadTask.TaskSnapshot>() {
+                    @Override
+                    public void onSuccess(FileDownloadTask.TaskSnapshot taskSnapshot) {
+                        destFile.delete();
+                        if (partFile.renameTo(destFile)) {
+                            callback.onDownloaded(destFile);
+                        } else {
+                            partFile.delete();
+                            callback.onFailure(new Exception("Failed to move downloaded file to " + destFile.getPath()));
+                        }
+                    }
+                })
+                .addOnFailureListener(new OnFailureListener() {
+                    @Override
+                    public void onFailure(@NonNull Exception e) {
+                        partFile.delete();
+                        callback.onFailure(e);
                     }
                 });
+        return downloadTask;
     }
 
     public static void downloadBook(Context context, String bookId, String bookTitle, String bookUrl) {
@@ -267,27 +581,32 @@ public class MyApplication extends Application {
         progressDialog.setCanceledOnTouchOutside(false);
         progressDialog.show();
 
-        //download from firebase storage url
-        StorageReference storageReference = FirebaseStorage.getInstance().getReferenceFromUrl(bookUrl);
-        storageReference.getBytes(MAX_BYTES_PDF)
-                .addOnSuccessListener(new OnSuccessListener<byte[]>() {
-                    @Override
-                    public void onSuccess(byte[] bytes) {
-                        Log.d(TAG_DOWNLOAD, "onSuccess: Book Downloaded");
-                        saveDownloadedBook(context, progressDialog, bytes, nameWithExtension, bookId);
-                    }
-                })
-                .addOnFailureListener(new OnFailureListener() {
-                    @Override
-                    public void onFailure(@NonNull Exception e) {
-                        Log.d(TAG_DOWNLOAD, "onFailure: Failed to Download due to " + e.getMessage());
-                        progressDialog.dismiss();
-                        Toast.makeText(context, "Failed to Download due to " + e.getMessage(), Toast.LENGTH_SHORT).show();
-                    }
-                });
+        //get book through local book store, then copy it to Downloads folder
+        BookStore.getInstance().fetch(bookUrl, new DownloadCallback() {
+            @Override
+            public void onProgress(long bytesTransferred, long totalBytes) {
+                if (totalBytes > 0) {
+                    long percent = bytesTransferred * 100 / totalBytes;
+                    progressDialog.setMessage("Downloading " + nameWithExtension + "... " + percent + "%");
+                }
+            }
+
+            @Override
+            public void onDownloaded(File file) {
+                Log.d(TAG_DOWNLOAD, "onDownloaded: Book Downloaded, " + file.length() + " bytes");
+                saveDownloadedBook(context, progressDialog, file, nameWithExtension, bookId);
+            }
+
+            @Override
+            public void onFailure(Exception e) {
+                Log.d(TAG_DOWNLOAD, "onFailure: Failed to Download due to " + e.getMessage());
+                progressDialog.dismiss();
+                Toast.makeText(context, "Failed to Download due to " + e.getMessage(), Toast.LENGTH_SHORT).show();
+            }
+        });
     }
 
-    private static void saveDownloadedBook(Context context, ProgressDialog progressDialog, byte[] bytes, String nameWithExtension, String bookId) {
+    private static void saveDownloadedBook(Context context, ProgressDialog progressDialog, File downloadedFile, String nameWithExtension, String bookId) {
         Log.d(TAG_DOWNLOAD, "saveDownloadedBook: Saving Book");
         try {
             File downloadsFolder = Environment.getExternalStoragePublicDirectory(Environment.DIRECTORY_DOWNLOADS);
@@ -295,8 +614,15 @@ public class MyApplication extends Application {
 
             String filePath = downloadsFolder.getPath() + "/" + nameWithExtension;
 
-            FileOutputStream out = new FileOutputStream(filePath);
-            out.write(bytes);
+            //copy in small chunks, never holding the whole book in memory
+            InputStream in = new FileInputStream(downloadedFile);
+            OutputStream out = new FileOutputStream(filePath);
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+            in.close();
             out.close();
 
             Toast.makeText(context, "Save to Downloads folder", Toast.LENGTH_SHORT).show();
@@ -314,46 +640,32 @@ public class MyApplication extends Application {
     private static void incrementBookDownloadCount(String bookId) {
         Log.d(TAG_DOWNLOAD, "incrementBookDownloadCount: Incrementing Book Download Count");
 
-        //Step (1) Get previous Downloads Count
+        //transaction, server runs it again when count changed meanwhile, so concurrent downloads are all counted
+        //a bare increment would bring back a book deleted while its page was open, as a record with only this count
         DatabaseReference ref = FirebaseDatabase.getInstance().getReference("Books");
-        ref.child(bookId)
-                .addListenerForSingleValueEvent(new ValueEventListener() {
+        ref.child(bookId).child("downloadsCount")
+                .runTransaction(new Transaction.Handler() {
+                    @NonNull
                     @Override
-                    public void onDataChange(@NonNull DataSnapshot snapshot) {
-                        //get data
-                        String downloadsCount = "" + snapshot.child("downloadsCount").getValue();
-                        Log.d(TAG_DOWNLOAD, "onDataChange: " + downloadsCount);
-                        //in case of null replace with zero
-                        if (downloadsCount.equals("") || downloadsCount.equals("null")) {
-                            downloadsCount = "0";
+                    public Transaction.Result doTransaction(@NonNull MutableData currentData) {
+                        //missing count is left missing: book was deleted, or it is just not in local cache yet
+                        //and the server runs this again with the count it has
+                        Long count = CounterValues.add(currentData.getValue(), 1);
+                        if (count != null) {
+                            currentData.setValue(count);
                         }
-
-                        //2) Increment downloads count
-                        long newDownloadsCount = Long.parseLong(downloadsCount) + 1;
-
-                        HashMap<String, Object> hashMap = new HashMap<>();
-                        hashMap.put("downloadsCount", newDownloadsCount);
-
-                        DatabaseReference reference = FirebaseDatabase.getInstance().getReference("Books");
-                        reference.child(bookId)
-                                .updateChildren(hashMap)
-                                .addOnSuccessListener(new OnSuccessListener<Void>() {
-                                    @Override
-                                    public void onSuccess(Void unused) {
-                                        Log.d(TAG_DOWNLOAD, "onSuccess: Downloads Count updated");
-                                    }
-                                })
-                                .addOnFailureListener(new OnFailureListener() {
-                                    @Override
-                                    public void onFailure(@NonNull Exception e) {
-                                        Log.d(TAG_DOWNLOAD, "onFailure: Failed to update downloads count due to " + e.getMessage());
-                                    }
-                                });
+                        return Transaction.success(currentData);
                     }
 
                     @Override
-                    public void onCancelled(@NonNull DatabaseError error) {
-
+                    public void onComplete(DatabaseError error, boolean committed, DataSnapshot currentData) {
+                        if (error != null) {
+                            Log.d(TAG_DOWNLOAD, "onComplete: Failed to update downloads count due to " + error.getMessage());
+                        } else if (currentData == null || !currentData.exists()) {
+                            Log.d(TAG_DOWNLOAD, "onComplete: Book was deleted, download not counted");
+                        } else {
+                            Log.d(TAG_DOWNLOAD, "onComplete: Downloads Count updated");
+                        }
                     }
                 });
     }
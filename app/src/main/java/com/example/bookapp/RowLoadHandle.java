@@ -0,0 +1,51 @@
+package com.example.bookapp;
+
+import java.util.ArrayList;
+
+/*Loads started for one bound row (ViewHolder), so they can be cancelled when the row is recycled
+* and their results dropped if the row got bound to another book meanwhile*/
+public class RowLoadHandle {
+
+    //id of the book the row is bound to, null when not bound
+    private String boundId;
+
+    //stoppers of the loads started for current book
+    private final ArrayList<Runnable> cancellers = new ArrayList<>();
+
+    //call at start of onBindViewHolder, cancels loads of previously bound book
+    public void bind(String bookId) {
+        cancel();
+        boundId = bookId;
+    }
+
+    //call from onViewRecycled
+    public void cancel() {
+        for (Runnable canceller : cancellers) {
+            canceller.run();
+        }
+        cancellers.clear();
+        boundId = null;
+    }
+
+    public String getBoundId() {
+        return boundId;
+    }
+
+    public boolean isBoundTo(String bookId) {
+        return boundId != null && boundId.equals(bookId);
+    }
+
+    public void addCanceller(Runnable canceller) {
+        cancellers.add(canceller);
+    }
+
+    //id the row is bound to when a load starts, pass it to isCurrent when the load completes
+    static String boundIdOf(RowLoadHandle handle) {
+        return handle == null ? null : handle.getBoundId();
+    }
+
+    //null handle means views are not recycled (e.g. detail page), results are always applied
+    static boolean isCurrent(RowLoadHandle handle, String bookId) {
+        return handle == null || handle.isBoundTo(bookId);
+    }
+}
@@ -9,24 +9,27 @@ import android.widget.Button;
 import android.widget.EditText;
 import android.widget.ImageButton;
 import android.widget.TextView;
+import android.widget.Toast;
 
-import androidx.annotation.NonNull;
 import androidx.appcompat.app.AppCompatActivity;
 import androidx.recyclerview.widget.RecyclerView;
 
+import com.example.bookapp.Constants;
 import com.example.bookapp.R;
 import com.example.bookapp.adapters.AdapterCategory;
+import com.example.bookapp.counters.ShardedCounter;
+import com.example.bookapp.jobs.CommentsMigration;
+import com.example.bookapp.jobs.MetadataBackfill;
+import com.example.bookapp.models.ChildEventList;
 import com.example.bookapp.models.ModelCategory;
 import com.google.android.material.floatingactionbutton.FloatingActionButton;
 import com.google.firebase.auth.FirebaseAuth;
 import com.google.firebase.auth.FirebaseUser;
-import com.google.firebase.database.DataSnapshot;
-import com.google.firebase.database.DatabaseError;
 import com.google.firebase.database.DatabaseReference;
 import com.google.firebase.database.FirebaseDatabase;
-import com.google.firebase.database.ValueEventListener;
 
 import java.util.ArrayList;
+import java.util.List;
 
 public class DashboardAdminActivity extends AppCompatActivity {
     //firebase auth
@@ -37,6 +40,8 @@ public class DashboardAdminActivity extends AppCompatActivity {
 
     //adapter
     private AdapterCategory adapterCategory;
+    //categories, kept current by child events
+    private ChildEventList<ModelCategory> categoryList;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -48,6 +53,11 @@ public class DashboardAdminActivity extends AppCompatActivity {
         checkUser();
         loadCategories();
 
+        //fold view count shards into the counts lists order by, only admins do it, while this screen is open
+        if (Constants.COUNTER_SHARDS > 1) {
+            ShardedCounter.startCompaction(Constants.COUNTER_COMPACT_INTERVAL_MS, Constants.COUNTER_COMPACT_PAGE_SIZE);
+        }
+
         //edit text change listener, search
         ((EditText) findViewById(R.id.searchEt)).addTextChangedListener(new TextWatcher() {
             @Override
@@ -88,6 +98,66 @@ public class DashboardAdminActivity extends AppCompatActivity {
             }
         });
 
+        //handle click, start/stop filling page count, size and cover of older books
+        Button backfillBtn = findViewById(R.id.backfillBtn);
+        MetadataBackfill backfill = MetadataBackfill.getInstance(this);
+        backfill.setListener(new MetadataBackfill.Listener() {
+            @Override
+            public void onBackfillProgress(int checked, int updated, int failed, long booksPerMinute, boolean finished) {
+                if (finished) {
+                    backfillBtn.setText("Backfill Books");
+                    Toast.makeText(DashboardAdminActivity.this, "Backfill: " + updated + " books updated, " + failed + " failed", Toast.LENGTH_SHORT).show();
+                } else {
+                    backfillBtn.setText("Stop (" + checked + " checked, " + booksPerMinute + "/min)");
+                }
+            }
+        });
+        if (backfill.isRunning()) {
+            backfillBtn.setText("Stop");
+        }
+        backfillBtn.setOnClickListener(new View.OnClickListener() {
+            @Override
+            public void onClick(View v) {
+                if (backfill.isRunning()) {
+                    backfill.stop();
+                    backfillBtn.setText("Stopping...");
+                } else {
+                    backfill.start();
+                    backfillBtn.setText("Stop");
+                }
+            }
+        });
+
+        //handle click, start/stop moving comments out of Books
+        Button migrateCommentsBtn = findViewById(R.id.migrateCommentsBtn);
+        CommentsMigration migration = CommentsMigration.getInstance(this);
+        migration.setListener(new CommentsMigration.Listener() {
+            @Override
+            public void onMigrationProgress(int booksChecked, int commentsMoved, boolean finished) {
+                if (finished) {
+                    migrateCommentsBtn.setText("Move Comments");
+                    Toast.makeText(DashboardAdminActivity.this, "Comments: " + commentsMoved + " moved from " + booksChecked + " books", Toast.LENGTH_SHORT).show();
+                } else {
+                    migrateCommentsBtn.setText("Stop (" + booksChecked + " checked)");
+                }
+            }
+        });
+        if (migration.isRunning()) {
+            migrateCommentsBtn.setText("Stop");
+        }
+        migrateCommentsBtn.setOnClickListener(new View.OnClickListener() {
+            @Override
+            public void onClick(View v) {
+                if (migration.isRunning()) {
+                    migration.stop();
+                    migrateCommentsBtn.setText("Stopping...");
+                } else {
+                    migration.start();
+                    migrateCommentsBtn.setText("Stop");
+                }
+            }
+        });
+
         //handle click, start PDF add screen
         ((FloatingActionButton) findViewById(R.id.addPDFFab)).setOnClickListener(new View.OnClickListener() {
             @Override
@@ -105,34 +175,33 @@ public class DashboardAdminActivity extends AppCompatActivity {
         });
     }
 
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        //backfill keeps running without this screen
+        MetadataBackfill.getInstance(this).setListener(null);
+        CommentsMigration.getInstance(this).setListener(null);
+        //stop following categories
+        categoryList.stop();
+        ShardedCounter.stopCompaction();
+    }
+
     private void loadCategories() {
-        //init arrayList
+        //init arrayList and adapter once, changes of single categories are applied to them
         categoryArrayList = new ArrayList<>();
+        adapterCategory = new AdapterCategory(DashboardAdminActivity.this, categoryArrayList);
+        ((RecyclerView) findViewById(R.id.categoriesRv)).setAdapter(adapterCategory);
 
         //get all categories from firebase
         DatabaseReference ref = FirebaseDatabase.getInstance().getReference("Categories");
-        ref.addValueEventListener(new ValueEventListener() {
+        categoryList = new ChildEventList<>(ref, ModelCategory.class);
+        categoryList.start(new ChildEventList.Listener<ModelCategory>() {
             @Override
-            public void onDataChange(@NonNull DataSnapshot snapshot) {
-                //clear arrayList before adding data to it
+            public void onListChanged(List<ModelCategory> categories) {
                 categoryArrayList.clear();
-                for (DataSnapshot ds : snapshot.getChildren()) {
-                    //get data
-                    ModelCategory model = ds.getValue(ModelCategory.class);
-
-                    //add category to arrayList
-                    categoryArrayList.add(model);
-                }
-                //setup adapter
-                adapterCategory = new AdapterCategory(DashboardAdminActivity.this, categoryArrayList);
-                //set adapter to recyclerView
-                ((RecyclerView) findViewById(R.id.categoriesRv)).setAdapter(adapterCategory);
-
-            }
-
-            @Override
-            public void onCancelled(@NonNull DatabaseError error) {
-
+                categoryArrayList.addAll(categories);
+                //only rows of changed categories are bound again
+                adapterCategory.setCategories(categoryArrayList);
             }
         });
     }
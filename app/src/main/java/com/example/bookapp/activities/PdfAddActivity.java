@@ -1,10 +1,13 @@
 package com.example.bookapp.activities;
 
 import android.app.ProgressDialog;
+import android.content.Context;
 import android.content.DialogInterface;
 import android.content.Intent;
+import android.database.Cursor;
 import android.net.Uri;
 import android.os.Bundle;
+import android.provider.OpenableColumns;
 import android.text.TextUtils;
 import android.util.Log;
 import android.view.View;
@@ -16,9 +19,10 @@ import androidx.appcompat.app.AlertDialog;
 import androidx.appcompat.app.AppCompatActivity;
 
 import com.example.bookapp.databinding.ActivityPdfAddBinding;
-import com.google.android.gms.tasks.OnFailureListener;
-import com.google.android.gms.tasks.OnSuccessListener;
-import com.google.android.gms.tasks.Task;
+import com.example.bookapp.upload.BatchUploadQueue;
+import com.example.bookapp.upload.BookRecordWriter;
+import com.example.bookapp.upload.PendingUpload;
+import com.example.bookapp.upload.UploadPipeline;
 import com.google.firebase.auth.FirebaseAuth;
 import com.google.firebase.database.DataSnapshot;
 import com.google.firebase.database.DatabaseError;
@@ -27,10 +31,8 @@ import com.google.firebase.database.FirebaseDatabase;
 import com.google.firebase.database.ValueEventListener;
 import com.google.firebase.storage.FirebaseStorage;
 import com.google.firebase.storage.StorageReference;
-import com.google.firebase.storage.UploadTask;
 
 import java.util.ArrayList;
-import java.util.HashMap;
 
 public class PdfAddActivity extends AppCompatActivity {
 
@@ -48,6 +50,12 @@ public class PdfAddActivity extends AppCompatActivity {
 
     //uri of picked pdf
     private Uri pdfUri = null;
+    //uris of picked pdfs when more than one is picked, they are uploaded as a batch
+    private ArrayList<Uri> pdfUris = new ArrayList<>();
+
+    //running upload, cancelled when user cancels the progress dialog
+    //outlives this page, a recreated page follows it instead of starting a second pipeline on the same upload
+    private static UploadPipeline uploadPipeline;
 
     public static final int PDF_PICK_CODE = 1000;
 
@@ -68,6 +76,18 @@ public class PdfAddActivity extends AppCompatActivity {
         progressDialog = new ProgressDialog(this);
         progressDialog.setMessage("Please wait");
         progressDialog.setCanceledOnTouchOutside(false);
+        progressDialog.setOnCancelListener(new DialogInterface.OnCancelListener() {
+            @Override
+            public void onCancel(DialogInterface dialog) {
+                //back pressed while uploading, stop the upload
+                if (uploadPipeline != null && uploadPipeline.isRunning()) {
+                    uploadPipeline.cancel();
+                    //user gave up on this upload, don't offer to resume it
+                    PendingUpload.clear(PdfAddActivity.this);
+                    Toast.makeText(PdfAddActivity.this, "Upload cancelled", Toast.LENGTH_SHORT).show();
+                }
+            }
+        });
 
         //handle click, go to previous activity
         binding.backBtn.setOnClickListener(new View.OnClickListener() {
@@ -101,6 +121,57 @@ public class PdfAddActivity extends AppCompatActivity {
                 validateData();
             }
         });
+
+        //upload interrupted by process death or connection loss, offer to continue it
+        checkPendingUpload();
+    }
+
+    private void checkPendingUpload() {
+        PendingUpload pendingUpload = PendingUpload.load(this);
+        if (uploadPipeline != null && uploadPipeline.isRunning()) {
+            //page was recreated, e.g. rotated, while the upload kept running, show its progress again
+            Log.d(TAG, "checkPendingUpload: following running upload");
+            if (pendingUpload != null) {
+                restoreInfo(pendingUpload);
+            }
+            uploadPipeline.setCallback(newUploadCallback(pendingUpload, null, 0));
+            progressDialog.setMessage("Uploading Pdf...");
+            progressDialog.show();
+            return;
+        }
+        if (pendingUpload == null) {
+            return;
+        }
+        long percent = pendingUpload.getTotalBytes() > 0 ? pendingUpload.getConfirmedBytes() * 100 / pendingUpload.getTotalBytes() : 0;
+        Log.d(TAG, "checkPendingUpload: " + pendingUpload.getTitle() + " stopped at " + percent + "%");
+
+        new AlertDialog.Builder(this)
+                .setTitle("Resume upload")
+                .setMessage("Upload of " + pendingUpload.getTitle() + " stopped at " + percent + "%. Resume it?")
+                .setPositiveButton("Resume", new DialogInterface.OnClickListener() {
+                    @Override
+                    public void onClick(DialogInterface dialog, int which) {
+                        //restore what user had entered, then upload as if submit was clicked
+                        restoreInfo(pendingUpload);
+                        validateData();
+                    }
+                })
+                .setNegativeButton("Discard", new DialogInterface.OnClickListener() {
+                    @Override
+                    public void onClick(DialogInterface dialog, int which) {
+                        PendingUpload.clear(PdfAddActivity.this);
+                    }
+                })
+                .show();
+    }
+
+    private void restoreInfo(PendingUpload pendingUpload) {
+        pdfUri = pendingUpload.getFileUri();
+        selectedCategoryId = pendingUpload.getCategoryId();
+        selectedCategoryTitle = pendingUpload.getCategoryTitle();
+        binding.titleEt.setText(pendingUpload.getTitle());
+        binding.descriptionEt.setText(pendingUpload.getDescription());
+        binding.categoryTv.setText(selectedCategoryTitle);
     }
 
     private String title = "", description = "";
@@ -113,6 +184,18 @@ public class PdfAddActivity extends AppCompatActivity {
         title = binding.titleEt.getText().toString().trim();
         description = binding.descriptionEt.getText().toString().trim();
 
+        if (pdfUris.size() > 1) {
+            //batch, titles are taken from file names
+            if (TextUtils.isEmpty(description)) {
+                Toast.makeText(this, "Enter description", Toast.LENGTH_SHORT).show();
+            } else if (TextUtils.isEmpty(selectedCategoryTitle)) {
+                Toast.makeText(this, "Pick category", Toast.LENGTH_SHORT).show();
+            } else {
+                uploadBatchToStorage();
+            }
+            return;
+        }
+
         //validate data
         if (TextUtils.isEmpty(title)) {
             Toast.makeText(this, "Enter Title", Toast.LENGTH_SHORT).show();
@@ -129,86 +212,163 @@ public class PdfAddActivity extends AppCompatActivity {
     }
 
     private void uploadPdfToStorage() {
-        //Step 2: Upload pdf to firebase storage
+        //Step 2: Upload pdf to firebase storage, then its cover and info, without blocking ui thread
         Log.d(TAG, "uploadPdfToStorage: uploading to storage...");
 
+        if (uploadPipeline != null && uploadPipeline.isRunning()) {
+            //one upload at a time, a second pipeline on the same book would write its record twice
+            Log.d(TAG, "uploadPdfToStorage: upload already running");
+            return;
+        }
+
         //show progress
         progressDialog.setMessage("Uploading Pdf...");
         progressDialog.show();
 
+        //continue interrupted upload of same pdf, otherwise start a new one
+        PendingUpload pendingUpload = PendingUpload.load(this);
+        if (pendingUpload != null && pendingUpload.getFileUri().equals(pdfUri)) {
+            pendingUpload = pendingUpload.withInfo(title, description, selectedCategoryId, selectedCategoryTitle);
+        } else {
+            pendingUpload = new PendingUpload(System.currentTimeMillis(), pdfUri, title, description, selectedCategoryId, selectedCategoryTitle);
+        }
+        pendingUpload.save(this);
+        PendingUpload upload = pendingUpload;
+        //session this attempt resumes, null for a new upload
+        Uri resumedSessionUri = upload.getSessionUri();
+        long resumedBytes = upload.getConfirmedBytes();
+
         //timestamp
-        long timestamp = System.currentTimeMillis();
+        long timestamp = upload.getTimestamp();
 
         //path of pdf in firebase storage
         String filePathAndName = "Books/" + timestamp;
         //storage reference
         StorageReference storageReference = FirebaseStorage.getInstance().getReference(filePathAndName);
-        storageReference.putFile(pdfUri)
-                .addOnSuccessListener(new OnSuccessListener<UploadTask.TaskSnapshot>() {
+        //after upload, covers then info are uploaded to firebase
+        BookRecordWriter recordWriter = new BookRecordWriter(this, pdfUri, timestamp, title, description, selectedCategoryId);
+        //session is saved with app context, the upload may outlive this page
+        Context appContext = getApplicationContext();
+        uploadPipeline = new UploadPipeline(storageReference, pdfUri, recordWriter, newUploadCallback(upload, resumedSessionUri, resumedBytes))
+                .setSessionListener(new UploadPipeline.SessionListener() {
                     @Override
-                    public void onSuccess(UploadTask.TaskSnapshot taskSnapshot) {
-                        Log.d(TAG, "onSuccess: PDF uploaded to storage...");
-                        Log.d(TAG, "onSuccess: getting pdf url");
+                    public void onSession(Uri sessionUri, long confirmedBytes, long totalBytes) {
+                        //persist progress, so the upload can resume from here after process death
+                        upload.saveSession(appContext, sessionUri, confirmedBytes, totalBytes);
+                    }
+                }).resumeFrom(resumedSessionUri, resumedBytes).start();
+    }
 
-                        //get pdf url
-                        Task<Uri> uriTask = taskSnapshot.getStorage().getDownloadUrl();
-                        while (!uriTask.isSuccessful()) ;
-                        String uploadedPdfUrl = "" + uriTask.getResult();
+    //callback showing progress of the upload on this page, upload is null when its info wasn't saved
+    private UploadPipeline.Callback newUploadCallback(PendingUpload upload, Uri resumedSessionUri, long resumedBytes) {
+        return new UploadPipeline.Callback() {
+            @Override
+            public void onStage(UploadPipeline.Stage stage) {
+                if (stage == UploadPipeline.Stage.RESOLVE_URL) {
+                    Log.d(TAG, "onStage: PDF uploaded to storage, getting pdf url");
+                    progressDialog.setMessage("Getting Pdf Url...");
+                } else if (stage == UploadPipeline.Stage.WRITE_RECORD) {
+                    progressDialog.setMessage("Uploading Cover and Pdf Info...");
+                }
+            }
 
-                        //upload to firebase db
-                        uploadPdfInfoToDb(uploadedPdfUrl, timestamp);
-                    }
-                })
-                .addOnFailureListener(new OnFailureListener() {
-                    @Override
-                    public void onFailure(@NonNull Exception e) {
-                        progressDialog.dismiss();
-                        Log.d(TAG, "onFailure: PDF Upload failed due to " + e.getMessage());
-                        Toast.makeText(PdfAddActivity.this, "PDF upload failed due to " + e.getMessage(), Toast.LENGTH_SHORT).show();
+            @Override
+            public void onProgress(long bytesTransferred, long totalBytes) {
+                long percent = totalBytes > 0 ? bytesTransferred * 100 / totalBytes : 0;
+                progressDialog.setMessage("Uploading Pdf... " + percent + "%");
+            }
+
+            @Override
+            public void onSuccess(String downloadUrl) {
+                PendingUpload.clear(PdfAddActivity.this);
+                progressDialog.dismiss();
+                Log.d(TAG, "onSuccess: Successfully uploaded...");
+                Toast.makeText(PdfAddActivity.this, "Successfully uploaded...", Toast.LENGTH_SHORT).show();
+            }
+
+            @Override
+            public void onFailure(UploadPipeline.Stage stage, Exception e) {
+                progressDialog.dismiss();
+                if (stage == UploadPipeline.Stage.UPLOAD) {
+                    Log.d(TAG, "onFailure: PDF Upload failed due to " + e.getMessage());
+                    if (upload != null && resumedSessionUri != null && resumedSessionUri.equals(upload.getSessionUri()) && upload.getConfirmedBytes() == resumedBytes) {
+                        //resumed session was rejected without any progress, e.g. expired, next attempt starts over
+                        upload.clearSession(PdfAddActivity.this);
                     }
-                });
+                    Toast.makeText(PdfAddActivity.this, "PDF upload failed due to " + e.getMessage(), Toast.LENGTH_SHORT).show();
+                } else {
+                    Log.d(TAG, "onFailure: Failed to upload due to " + e.getMessage());
+                    Toast.makeText(PdfAddActivity.this, "Failed to upload due to " + e.getMessage(), Toast.LENGTH_SHORT).show();
+                }
+            }
+        };
     }
 
-    private void uploadPdfInfoToDb(String uploadedPdfUrl, long timestamp) {
-        //Step 3: Uploading pdf into firebase db
-        Log.d(TAG, "uploadPdfToStorage: Uploading pdf into firebase db...");
-
-        progressDialog.setMessage("Uploading Pdf Info...");
-
-        String uid = firebaseAuth.getUid();
-
-        //setup data to upload also add view count, download count while adding pdf/book
-        HashMap<String, Object> hashMap = new HashMap<>();
-        hashMap.put("uid", "" + uid);
-        hashMap.put("id", "" + timestamp);
-        hashMap.put("title", "" + title);
-        hashMap.put("description", "" + description);
-        hashMap.put("categoryId", "" + selectedCategoryId);
-        hashMap.put("url", "" + uploadedPdfUrl);
-        hashMap.put("timestamp", timestamp);
-        hashMap.put("viewsCount", 0);
-        hashMap.put("downloadsCount", 0);
-
-        //db reference
-        DatabaseReference ref = FirebaseDatabase.getInstance().getReference("Books");
-        ref.child("" + timestamp)
-                .setValue(hashMap)
-                .addOnSuccessListener(new OnSuccessListener<Void>() {
-                    @Override
-                    public void onSuccess(Void unused) {
-                        progressDialog.dismiss();
-                        Log.d(TAG, "onSuccess: Successfully uploaded...");
-                        Toast.makeText(PdfAddActivity.this, "Successfully uploaded...", Toast.LENGTH_SHORT).show();
-                    }
-                })
-                .addOnFailureListener(new OnFailureListener() {
-                    @Override
-                    public void onFailure(@NonNull Exception e) {
-                        progressDialog.dismiss();
-                        Log.d(TAG, "onFailure: Failed to upload due to " + e.getMessage());
-                        Toast.makeText(PdfAddActivity.this, "Failed to upload due to " + e.getMessage(), Toast.LENGTH_SHORT).show();
-                    }
-                });
+    //callback of an upload nobody watches after this page is gone, only forgets the upload once it is done
+    private static UploadPipeline.Callback newDetachedCallback(Context appContext) {
+        return new UploadPipeline.Callback() {
+            @Override
+            public void onStage(UploadPipeline.Stage stage) {
+
+            }
+
+            @Override
+            public void onProgress(long bytesTransferred, long totalBytes) {
+
+            }
+
+            @Override
+            public void onSuccess(String downloadUrl) {
+                Log.d(TAG, "onSuccess: uploaded while page was gone");
+                PendingUpload.clear(appContext);
+            }
+
+            @Override
+            public void onFailure(UploadPipeline.Stage stage, Exception e) {
+                //upload stays saved, next visit of this page offers to resume it
+                Log.d(TAG, "onFailure: upload failed while page was gone due to " + e.getMessage());
+            }
+        };
+    }
+
+    private void uploadBatchToStorage() {
+        //Step 2 of batch: queue all picked pdfs, queue keeps uploading even if user leaves this page
+        Log.d(TAG, "uploadBatchToStorage: queueing " + pdfUris.size() + " pdfs");
+
+        BatchUploadQueue queue = BatchUploadQueue.getInstance();
+        queue.setListener(new BatchUploadQueue.Listener() {
+            @Override
+            public void onBatchProgress(int done, int failed, int total, long bytesPerSecond) {
+                progressDialog.setMessage("Uploaded " + done + " of " + total + " books, " + (bytesPerSecond / 1024) + " KB/s");
+                if (done + failed == total) {
+                    progressDialog.dismiss();
+                    Toast.makeText(PdfAddActivity.this, done + " books uploaded, " + failed + " failed", Toast.LENGTH_SHORT).show();
+                }
+            }
+        });
+        for (Uri uri : pdfUris) {
+            queue.enqueue(uri, getFileTitle(uri), description, selectedCategoryId);
+        }
+        pdfUris.clear();
+
+        progressDialog.setMessage("Uploading books...");
+        progressDialog.show();
+    }
+
+    private String getFileTitle(Uri uri) {
+        //file name without .pdf, e.g. "Clean Code.pdf" becomes "Clean Code"
+        String name = "" + uri.getLastPathSegment();
+        Cursor cursor = getContentResolver().query(uri, new String[]{OpenableColumns.DISPLAY_NAME}, null, null, null);
+        if (cursor != null) {
+            if (cursor.moveToFirst()) {
+                name = cursor.getString(0);
+            }
+            cursor.close();
+        }
+        if (name.toLowerCase().endsWith(".pdf")) {
+            name = name.substring(0, name.length() - 4);
+        }
+        return name;
     }
 
     private void loadPdfCategories() {
@@ -276,10 +436,35 @@ public class PdfAddActivity extends AppCompatActivity {
     private void pdfPickIntent() {
         Log.d(TAG, "pdfPickIntent: start pdf pick intent");
 
+        //open document, so read access to the pdf can be kept for resuming its upload after restart
         Intent intent = new Intent();
         intent.setType("application/pdf");
-        intent.setAction(Intent.ACTION_GET_CONTENT);
-        startActivityForResult(Intent.createChooser(intent, "Select PDF"), PDF_PICK_CODE);
+        intent.setAction(Intent.ACTION_OPEN_DOCUMENT);
+        intent.addCategory(Intent.CATEGORY_OPENABLE);
+        //admins can pick many pdfs to add them at once
+        intent.putExtra(Intent.EXTRA_ALLOW_MULTIPLE, true);
+        startActivityForResult(intent, PDF_PICK_CODE);
+    }
+
+    private void keepReadAccess(Uri uri) {
+        try {
+            getContentResolver().takePersistableUriPermission(uri, Intent.FLAG_GRANT_READ_URI_PERMISSION);
+        } catch (SecurityException e) {
+            //provider doesn't allow it, upload can still resume while this process lives
+            Log.d(TAG, "keepReadAccess: can't keep access to pdf due to " + e.getMessage());
+        }
+    }
+
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        //batch keeps uploading without this page
+        BatchUploadQueue.getInstance().setListener(null);
+        //so does a single upload, its callbacks must not touch this page anymore
+        if (uploadPipeline != null && uploadPipeline.isRunning()) {
+            uploadPipeline.setCallback(newDetachedCallback(getApplicationContext()));
+        }
+        progressDialog.dismiss();
     }
 
     @Override
@@ -290,9 +475,23 @@ public class PdfAddActivity extends AppCompatActivity {
             if (requestCode == PDF_PICK_CODE) {
                 Log.d(TAG, "onActivityResult: PDF Picked");
 
-                pdfUri = data.getData();
+                pdfUris.clear();
+                if (data.getClipData() != null) {
+                    for (int i = 0; i < data.getClipData().getItemCount(); i++) {
+                        pdfUris.add(data.getClipData().getItemAt(i).getUri());
+                    }
+                } else {
+                    pdfUris.add(data.getData());
+                }
+                for (Uri uri : pdfUris) {
+                    keepReadAccess(uri);
+                }
+                pdfUri = pdfUris.get(0);
 
-                Log.d(TAG, "onActivityResult: URI: " + pdfUri);
+                if (pdfUris.size() > 1) {
+                    Toast.makeText(this, pdfUris.size() + " PDFs picked, titles are taken from file names", Toast.LENGTH_SHORT).show();
+                }
+                Log.d(TAG, "onActivityResult: URI: " + pdfUri + ", " + pdfUris.size() + " picked");
             }
         } else {
             Log.d(TAG, "onActivityResult: cancelled picking pdf");
@@ -17,20 +17,26 @@ import androidx.annotation.NonNull;
 import androidx.appcompat.app.AlertDialog;
 import androidx.appcompat.app.AppCompatActivity;
 import androidx.core.content.ContextCompat;
+import androidx.core.widget.NestedScrollView;
 
+import com.bumptech.glide.Glide;
+import com.example.bookapp.Constants;
 import com.example.bookapp.MyApplication;
 import com.example.bookapp.R;
 import com.example.bookapp.adapters.AdapterComment;
+import com.example.bookapp.counters.ShardedCounter;
 import com.example.bookapp.databinding.ActivityPdfDetailBinding;
 import com.example.bookapp.databinding.DialogCommentAddBinding;
 import com.example.bookapp.models.ModelComment;
 import com.google.android.gms.tasks.OnFailureListener;
 import com.google.android.gms.tasks.OnSuccessListener;
 import com.google.firebase.auth.FirebaseAuth;
+import com.google.firebase.database.ChildEventListener;
 import com.google.firebase.database.DataSnapshot;
 import com.google.firebase.database.DatabaseError;
 import com.google.firebase.database.DatabaseReference;
 import com.google.firebase.database.FirebaseDatabase;
+import com.google.firebase.database.Query;
 import com.google.firebase.database.ValueEventListener;
 
 import java.util.ArrayList;
@@ -48,12 +54,23 @@ public class PdfDetailActivity extends AppCompatActivity {
     private FirebaseAuth firebaseAuth;
 
     public static final String TAG_DOWNLOAD = "DOWNLOAD_TAG";
+    public static final String TAG = "PDF_DETAIL_TAG";
 
     //progress dialog
     private ProgressDialog progressDialog;
 
-    //arrayList to store comments
+    //arrayList to store comments, newest first
     private ArrayList<ModelComment> commentArrayList;
+    //paging of comments: key of oldest loaded comment, a page is loading, no older comments left
+    private String oldestCommentKey = null;
+    private boolean loadingComments = false;
+    private boolean allCommentsLoaded = false;
+    //live add/change/remove of first page and newer comments
+    private Query liveCommentsQuery;
+    private ChildEventListener liveCommentsListener;
+    //comments still in Books/<bookId>/Comments, not moved by the migration yet or written by old app versions
+    private DatabaseReference legacyCommentsRef;
+    private ChildEventListener legacyCommentsListener;
 
     //adapter to set to recyclerView
     private AdapterComment adapterComment;
@@ -152,36 +169,238 @@ public class PdfDetailActivity extends AppCompatActivity {
     }
 
     private void loadComments() {
-        //init arrayList before inserting data to it
+        //init arrayList and adapter once, pages and live changes are applied to them
         commentArrayList = new ArrayList<>();
+        adapterComment = new AdapterComment(PdfDetailActivity.this, commentArrayList);
+        binding.commentsRv.setAdapter(adapterComment);
 
-        //db path to load comments
-        DatabaseReference ref = FirebaseDatabase.getInstance().getReference("Books");
-        ref.child(bookId).child("Comments")
-                .addValueEventListener(new ValueEventListener() {
+        //older comments are loaded as user scrolls near the end of the page
+        int loadMorePx = (int) (Constants.COMMENTS_LOAD_MORE_DP * getResources().getDisplayMetrics().density);
+        binding.scrollView.setOnScrollChangeListener(new NestedScrollView.OnScrollChangeListener() {
+            @Override
+            public void onScrollChange(NestedScrollView v, int scrollX, int scrollY, int oldScrollX, int oldScrollY) {
+                if (scrollY > oldScrollY
+                        && scrollY >= v.getChildAt(0).getMeasuredHeight() - v.getMeasuredHeight() - loadMorePx) {
+                    loadOlderComments();
+                }
+            }
+        });
+
+        //db path to load comments, kept out of Books so book lists don't download them
+        //comment ids are timestamps, so key order is time order; newest page first
+        DatabaseReference ref = FirebaseDatabase.getInstance().getReference("Comments");
+        loadingComments = true;
+        ref.child(bookId).orderByKey().limitToLast(Constants.COMMENTS_PAGE_SIZE)
+                .addListenerForSingleValueEvent(new ValueEventListener() {
                     @Override
                     public void onDataChange(@NonNull DataSnapshot snapshot) {
-                        //clear arrayList before adding data into it
-                        commentArrayList.clear();
-                        for (DataSnapshot ds: snapshot.getChildren()) {
-                            //get data as model, spellings in variables must be same as in firebase
-                            ModelComment model = ds.getValue(ModelComment.class);
-                            //add to arrayList
-                            commentArrayList.add(model);
-                        }
-                        //setup adapter
-                        adapterComment = new AdapterComment(PdfDetailActivity.this,commentArrayList);
-                        //set adapter to recyclerView
-                        binding.commentsRv.setAdapter(adapterComment);
+                        loadingComments = false;
+                        String boundaryKey = addCommentsPage(snapshot);
+                        //from oldest comment of first page onwards, every add/change/remove is applied as it happens
+                        listenForComments(boundaryKey);
                     }
 
                     @Override
                     public void onCancelled(@NonNull DatabaseError error) {
+                        Log.d(TAG, "onCancelled: failed to load comments due to " + error.getMessage());
+                        loadingComments = false;
+                    }
+                });
+        //comments not moved out of Books yet are shown with them
+        listenForLegacyComments();
+    }
+
+    private void loadOlderComments() {
+        if (loadingComments || allCommentsLoaded || oldestCommentKey == null) {
+            return;
+        }
+        loadingComments = true;
+
+        DatabaseReference ref = FirebaseDatabase.getInstance().getReference("Comments");
+        ref.child(bookId).orderByKey().endBefore(oldestCommentKey).limitToLast(Constants.COMMENTS_PAGE_SIZE)
+                .addListenerForSingleValueEvent(new ValueEventListener() {
+                    @Override
+                    public void onDataChange(@NonNull DataSnapshot snapshot) {
+                        loadingComments = false;
+                        addCommentsPage(snapshot);
+                    }
+
+                    @Override
+                    public void onCancelled(@NonNull DatabaseError error) {
+                        //tried again on next scroll
+                        Log.d(TAG, "onCancelled: failed to load older comments due to " + error.getMessage());
+                        loadingComments = false;
+                    }
+                });
+    }
+
+    //adds a page older than every page loaded before, returns key of its oldest comment
+    private String addCommentsPage(DataSnapshot snapshot) {
+        ArrayList<ModelComment> page = new ArrayList<>();
+        for (DataSnapshot ds : snapshot.getChildren()) {
+            //get data as model, spellings in variables must be same as in firebase
+            page.add(0, ds.getValue(ModelComment.class));
+        }
+        if (page.size() < Constants.COMMENTS_PAGE_SIZE) {
+            allCommentsLoaded = true;
+        }
+        if (page.isEmpty()) {
+            return null;
+        }
+        oldestCommentKey = page.get(page.size() - 1).getId();
+
+        //comments of Books/<bookId>/Comments may be shown already, so each goes to its place by time
+        for (ModelComment model : page) {
+            showComment(model);
+        }
+        Log.d(TAG, "addCommentsPage: " + page.size() + " comments, " + commentArrayList.size() + " shown" + (allCommentsLoaded ? ", all loaded" : ""));
+        return oldestCommentKey;
+    }
+
+    //inserts a comment not shown yet, newest first
+    private void showComment(ModelComment model) {
+        if (model == null || model.getId() == null || findComment(model.getId()) >= 0) {
+            return;
+        }
+        int position = 0;
+        while (position < commentArrayList.size() && compareKeys(commentArrayList.get(position).getId(), model.getId()) > 0) {
+            position++;
+        }
+        commentArrayList.add(position, model);
+        adapterComment.notifyItemInserted(position);
+    }
 
+    private void updateComment(DataSnapshot snapshot) {
+        int position = findComment(snapshot.getKey());
+        if (position >= 0) {
+            commentArrayList.set(position, snapshot.getValue(ModelComment.class));
+            adapterComment.notifyItemChanged(position);
+        }
+    }
+
+    //a comment left a query, it's only removed from the list if it's gone from Comments/<bookId> too
+    //e.g. pushed out of the newest ones by a newer comment, or moved out of Books by the migration
+    private void removeCommentIfDeleted(String commentId) {
+        FirebaseDatabase.getInstance().getReference("Comments").child(bookId).child(commentId)
+                .addListenerForSingleValueEvent(new ValueEventListener() {
+                    @Override
+                    public void onDataChange(@NonNull DataSnapshot comment) {
+                        int position = findComment(commentId);
+                        if (!comment.exists() && position >= 0) {
+                            commentArrayList.remove(position);
+                            adapterComment.notifyItemRemoved(position);
+                        }
+                    }
+
+                    @Override
+                    public void onCancelled(@NonNull DatabaseError error) {
+                        Log.d(TAG, "onCancelled: failed to check removed comment due to " + error.getMessage());
                     }
                 });
     }
 
+    private void listenForComments(String boundaryKey) {
+        Query query = FirebaseDatabase.getInstance().getReference("Comments").child(bookId).orderByKey();
+        if (boundaryKey != null) {
+            query = query.startAt(boundaryKey);
+        } else {
+            //first page was empty, only the newest comments are followed, not the whole node
+            query = query.limitToLast(Constants.COMMENTS_PAGE_SIZE);
+        }
+        liveCommentsQuery = query;
+        liveCommentsListener = new ChildEventListener() {
+            @Override
+            public void onChildAdded(@NonNull DataSnapshot snapshot, String previousChildName) {
+                //first page comes again here, those are already shown
+                showComment(snapshot.getValue(ModelComment.class));
+            }
+
+            @Override
+            public void onChildChanged(@NonNull DataSnapshot snapshot, String previousChildName) {
+                updateComment(snapshot);
+            }
+
+            @Override
+            public void onChildRemoved(@NonNull DataSnapshot snapshot) {
+                removeCommentIfDeleted(snapshot.getKey());
+            }
+
+            @Override
+            public void onChildMoved(@NonNull DataSnapshot snapshot, String previousChildName) {
+
+            }
+
+            @Override
+            public void onCancelled(@NonNull DatabaseError error) {
+                Log.d(TAG, "onCancelled: live comments stopped due to " + error.getMessage());
+            }
+        };
+        liveCommentsQuery.addChildEventListener(liveCommentsListener);
+    }
+
+    private void listenForLegacyComments() {
+        //shown together with Comments/<bookId> for as long as the old node has children; it is empty for books
+        //the migration reached, unless an old app version wrote to it since
+        legacyCommentsRef = FirebaseDatabase.getInstance().getReference("Books").child(bookId).child("Comments");
+        legacyCommentsListener = new ChildEventListener() {
+            @Override
+            public void onChildAdded(@NonNull DataSnapshot snapshot, String previousChildName) {
+                showComment(snapshot.getValue(ModelComment.class));
+            }
+
+            @Override
+            public void onChildChanged(@NonNull DataSnapshot snapshot, String previousChildName) {
+                updateComment(snapshot);
+            }
+
+            @Override
+            public void onChildRemoved(@NonNull DataSnapshot snapshot) {
+                //migration moves it to Comments/<bookId>, where it stays shown
+                removeCommentIfDeleted(snapshot.getKey());
+            }
+
+            @Override
+            public void onChildMoved(@NonNull DataSnapshot snapshot, String previousChildName) {
+
+            }
+
+            @Override
+            public void onCancelled(@NonNull DatabaseError error) {
+                Log.d(TAG, "onCancelled: old comments stopped due to " + error.getMessage());
+            }
+        };
+        legacyCommentsRef.addChildEventListener(legacyCommentsListener);
+    }
+
+    private int findComment(String commentId) {
+        for (int i = 0; i < commentArrayList.size(); i++) {
+            if (commentArrayList.get(i).getId().equals(commentId)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    //same order as firebase orderByKey, numeric keys (timestamps) by value
+    private static int compareKeys(String a, String b) {
+        try {
+            return Long.compare(Long.parseLong(a), Long.parseLong(b));
+        } catch (NumberFormatException e) {
+            return a.compareTo(b);
+        }
+    }
+
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        if (liveCommentsListener != null) {
+            liveCommentsQuery.removeEventListener(liveCommentsListener);
+        }
+        if (legacyCommentsListener != null) {
+            legacyCommentsRef.removeEventListener(legacyCommentsListener);
+        }
+    }
+
     private String comment = "";
 
     private void addCommentDialog() {
@@ -240,9 +459,9 @@ public class PdfDetailActivity extends AppCompatActivity {
         hashMap.put("uid", "" + firebaseAuth.getUid());
 
         //DB path to add data into it
-        //Books > bookId > Comments > commentId > commentData
-        DatabaseReference ref = FirebaseDatabase.getInstance().getReference("Books");
-        ref.child(bookId).child("Comments").child(timestamp)
+        //Comments > bookId > commentId > commentData
+        DatabaseReference ref = FirebaseDatabase.getInstance().getReference("Comments");
+        ref.child(bookId).child(timestamp)
                 .setValue(hashMap)
                 .addOnSuccessListener(new OnSuccessListener<Void>() {
                     @Override
@@ -283,10 +502,16 @@ public class PdfDetailActivity extends AppCompatActivity {
                         bookTitle = "" + snapshot.child("title").getValue();
                         String description = "" + snapshot.child("description").getValue();
                         String categoryId = "" + snapshot.child("categoryId").getValue();
-                        String viewsCount = "" + snapshot.child("viewsCount").getValue();
+                        Long viewsCount = snapshot.child("viewsCount").getValue(Long.class);
                         String downloadsCount = "" + snapshot.child("downloadsCount").getValue();
                         bookUrl = "" + snapshot.child("url").getValue();
                         String timestamp = "" + snapshot.child("timestamp").getValue();
+                        //stored at upload, missing for older books
+                        Long sizeBytes = snapshot.child("sizeBytes").getValue(Long.class);
+                        Long pageCount = snapshot.child("pageCount").getValue(Long.class);
+                        //rendered at upload, missing for older books
+                        String coverUrl = snapshot.child("coverUrl").getValue(String.class);
+                        String coverUrlLarge = snapshot.child("coverUrlLarge").getValue(String.class);
 
                         //required data is loaded, show download button
                         binding.downloadBookBtn.setVisibility(View.VISIBLE);
@@ -296,25 +521,49 @@ public class PdfDetailActivity extends AppCompatActivity {
 
                         MyApplication.loadCategory(
                                 "" + categoryId,
-                                binding.categoryTv
-                        );
-                        MyApplication.loadPdfFromUrlSinglePage(
-                                "" + bookUrl,
-                                "" + bookTitle,
-                                binding.pdfView,
-                                binding.progressBar,
-                                binding.pagesTv
+                                binding.categoryTv,
+                                null
                         );
+                        //page count from record if stored, otherwise from the loaded pdf
+                        if (pageCount != null && pageCount > 0) {
+                            binding.pagesTv.setText("" + pageCount);
+                        }
+                        //preview from the covers, pdf is only downloaded for older books that need it for their page count
+                        String previewUrl = hasUrl(coverUrlLarge) ? coverUrlLarge : coverUrl;
+                        if (hasUrl(previewUrl) || (pageCount != null && pageCount > 0)) {
+                            binding.pdfView.setVisibility(View.GONE);
+                            binding.progressBar.setVisibility(View.GONE);
+                            if (hasUrl(previewUrl)) {
+                                binding.coverIv.setVisibility(View.VISIBLE);
+                                Glide.with(binding.coverIv)
+                                        .load(previewUrl)
+                                        .into(binding.coverIv);
+                            }
+                            if (pageCount == null || pageCount <= 0) {
+                                //cover was backfilled without a page count, not worth a pdf download
+                                binding.pagesTv.setText("N/A");
+                            }
+                        } else {
+                            MyApplication.loadPdfFromUrlSinglePage(
+                                    "" + bookUrl,
+                                    "" + bookTitle,
+                                    binding.pdfView,
+                                    binding.progressBar,
+                                    binding.pagesTv
+                            );
+                        }
                         MyApplication.loadPdfSize(
+                                sizeBytes == null ? 0 : sizeBytes,
                                 "" + bookUrl,
                                 "" + bookTitle,
-                                binding.sizeTv
+                                binding.sizeTv,
+                                null
                         );
 
                         //set data
                         binding.titleTv.setText(bookTitle);
                         binding.descriptionTv.setText(description);
-                        binding.viewsTv.setText(viewsCount.replace("null", "N/A"));
+                        loadViewsCount(viewsCount);
                         binding.downloadsTv.setText(downloadsCount.replace("null", "N/A"));
                         binding.dateTv.setText(date);
 
@@ -327,6 +576,29 @@ public class PdfDetailActivity extends AppCompatActivity {
                 });
     }
 
+    private static boolean hasUrl(String url) {
+        return url != null && !url.isEmpty() && !url.equals("null");
+    }
+
+    private void loadViewsCount(Long rollup) {
+        binding.viewsTv.setText(rollup == null ? "N/A" : "" + rollup);
+        //rollup plus shards not compacted yet
+        DatabaseReference ref = FirebaseDatabase.getInstance().getReference("Counters");
+        ref.child(bookId).child("viewsCount")
+                .addListenerForSingleValueEvent(new ValueEventListener() {
+                    @Override
+                    public void onDataChange(@NonNull DataSnapshot snapshot) {
+                        Long viewsCount = ShardedCounter.read(rollup, snapshot);
+                        binding.viewsTv.setText(viewsCount == null ? "N/A" : "" + viewsCount);
+                    }
+
+                    @Override
+                    public void onCancelled(@NonNull DatabaseError error) {
+
+                    }
+                });
+    }
+
     private void checkIsFavorite() {
         firebaseAuth = FirebaseAuth.getInstance();
         if (firebaseAuth.getCurrentUser() == null) {
@@ -7,19 +7,20 @@ import android.text.TextWatcher;
 import android.util.Log;
 import android.view.View;
 
-import androidx.annotation.NonNull;
 import androidx.appcompat.app.AppCompatActivity;
 
+import com.example.bookapp.Constants;
 import com.example.bookapp.adapters.AdapterPdfAdmin;
+import com.example.bookapp.adapters.ThumbnailPrefetcher;
+import com.example.bookapp.cache.BookCache;
 import com.example.bookapp.databinding.ActivityPdfListAdminBinding;
+import com.example.bookapp.models.ChildEventList;
 import com.example.bookapp.models.ModelPdf;
-import com.google.firebase.database.DataSnapshot;
-import com.google.firebase.database.DatabaseError;
 import com.google.firebase.database.DatabaseReference;
 import com.google.firebase.database.FirebaseDatabase;
-import com.google.firebase.database.ValueEventListener;
 
 import java.util.ArrayList;
+import java.util.List;
 
 public class PdfListAdminActivity extends AppCompatActivity {
 
@@ -32,6 +33,9 @@ public class PdfListAdminActivity extends AppCompatActivity {
     //adapter
     private AdapterPdfAdmin adapterPdfAdmin;
 
+    //books of the category, kept current by child events
+    private ChildEventList<ModelPdf> bookList;
+
     private static final String TAG = "PDF_LIST_TAG";
 
     private String categoryId, categoryTitle;
@@ -42,6 +46,10 @@ public class PdfListAdminActivity extends AppCompatActivity {
         binding = ActivityPdfListAdminBinding.inflate(getLayoutInflater());
         setContentView(binding.getRoot());
 
+        //warm thumbnails of rows user scrolls towards
+        binding.bookRv.addOnScrollListener(new ThumbnailPrefetcher(binding.bookRv,
+                Constants.PREFETCH_ROWS, Constants.PREFETCH_MAX_CONCURRENT, Constants.PREFETCH_FLING_VELOCITY_DP));
+
         //get data from intent
         Intent intent = getIntent();
         categoryId = intent.getStringExtra("categoryId");
@@ -86,33 +94,33 @@ public class PdfListAdminActivity extends AppCompatActivity {
     }
 
     private void loadPdfList() {
-        //init list before adding data
+        //init list and adapter once, changes of single books are applied to them
         pdfArrayList = new ArrayList<>();
+        adapterPdfAdmin = new AdapterPdfAdmin(PdfListAdminActivity.this, pdfArrayList);
+        binding.bookRv.setAdapter(adapterPdfAdmin);
 
         DatabaseReference ref = FirebaseDatabase.getInstance().getReference("Books");
-        ref.orderByChild("categoryId").equalTo(categoryId)
-                .addValueEventListener(new ValueEventListener() {
-                    @Override
-                    public void onDataChange(@NonNull DataSnapshot snapshot) {
-                        pdfArrayList.clear();
-                        for (DataSnapshot ds : snapshot.getChildren()) {
-                            //get data
-                            ModelPdf model = ds.getValue(ModelPdf.class);
-                            //add to list
-                            pdfArrayList.add(model);
-
-                            Log.d(TAG, "onDataChange: "+model.getId()+" "+model.getTitle());
-                        }
-
-                        //setup adapter
-                        adapterPdfAdmin = new AdapterPdfAdmin(PdfListAdminActivity.this, pdfArrayList);
-                        binding.bookRv.setAdapter(adapterPdfAdmin);
-                    }
-
-                    @Override
-                    public void onCancelled(@NonNull DatabaseError error) {
-
-                    }
-                });
+        bookList = new ChildEventList<>(ref.orderByChild("categoryId").equalTo(categoryId), ModelPdf.class);
+        bookList.start(new ChildEventList.Listener<ModelPdf>() {
+            @Override
+            public void onListChanged(List<ModelPdf> books) {
+                for (ModelPdf model : books) {
+                    //favorites and other id lookups reuse it
+                    BookCache.getInstance().put(model);
+                }
+                Log.d(TAG, "onListChanged: " + books.size() + " books");
+                pdfArrayList.clear();
+                pdfArrayList.addAll(books);
+                //only rows of changed books are bound again
+                adapterPdfAdmin.setBooks(pdfArrayList);
+            }
+        });
+    }
+
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        //stop following books of this category
+        bookList.stop();
     }
-}
\ No newline at end of file
+}
@@ -2,6 +2,7 @@ package com.example.bookapp.activities;
 
 import android.content.Intent;
 import android.os.Bundle;
+import android.os.SystemClock;
 import android.util.Log;
 import android.view.View;
 import android.widget.Toast;
@@ -10,19 +11,21 @@ import androidx.annotation.NonNull;
 import androidx.appcompat.app.AppCompatActivity;
 
 import com.example.bookapp.Constants;
+import com.example.bookapp.MyApplication;
+import com.example.bookapp.cache.BookStore;
+import com.example.bookapp.cache.ReaderPageCache;
 import com.example.bookapp.databinding.ActivityPdfViewBinding;
 import com.github.barteksc.pdfviewer.listener.OnErrorListener;
+import com.github.barteksc.pdfviewer.listener.OnLoadCompleteListener;
 import com.github.barteksc.pdfviewer.listener.OnPageChangeListener;
 import com.github.barteksc.pdfviewer.listener.OnPageErrorListener;
-import com.google.android.gms.tasks.OnFailureListener;
-import com.google.android.gms.tasks.OnSuccessListener;
 import com.google.firebase.database.DataSnapshot;
 import com.google.firebase.database.DatabaseError;
 import com.google.firebase.database.DatabaseReference;
 import com.google.firebase.database.FirebaseDatabase;
 import com.google.firebase.database.ValueEventListener;
-import com.google.firebase.storage.FirebaseStorage;
-import com.google.firebase.storage.StorageReference;
+
+import java.io.File;
 
 public class PdfViewActivity extends AppCompatActivity {
 
@@ -31,11 +34,21 @@ public class PdfViewActivity extends AppCompatActivity {
 
     private String bookId;
 
+    //url of the book and callback waiting for it, download is cancelled if user leaves before it completes
+    private String pdfUrl;
+    private MyApplication.DownloadCallback bookCallback;
+
+    //time screen was opened, to measure open to first page latency
+    private long openTime;
+
     private static final String TAG = "PDF_VIEW_TAG";
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
+        openTime = SystemClock.elapsedRealtime();
+        //size render cache of PDFView before it is created, adjacent pages are pre-rendered
+        ReaderPageCache.configure(this, Constants.READER_CACHED_PAGES, Constants.MAX_BYTES_READER_PAGES);
         binding = ActivityPdfViewBinding.inflate(getLayoutInflater());
         setContentView(binding.getRoot());
 
@@ -55,6 +68,35 @@ public class PdfViewActivity extends AppCompatActivity {
         });
     }
 
+    @Override
+    protected void onStart() {
+        super.onStart();
+        //reader sizes of the render cache, full size again after a trim
+        ReaderPageCache.show();
+    }
+
+    @Override
+    protected void onStop() {
+        super.onStop();
+        //render cache settings are process wide, other PDFViews get the library's values back
+        ReaderPageCache.hide();
+    }
+
+    @Override
+    public void onTrimMemory(int level) {
+        super.onTrimMemory(level);
+        //give back rendered pages other than the one on screen
+        ReaderPageCache.trim(level);
+    }
+
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        if (bookCallback != null) {
+            BookStore.getInstance().cancel(pdfUrl, bookCallback);
+        }
+    }
+
     private void loadBookDetails() {
         Log.d(TAG, "loadBookDetails: Get pdf URL from db...");
 
@@ -83,49 +125,64 @@ public class PdfViewActivity extends AppCompatActivity {
     private void loadBookFromUrl(String pdfUrl) {
         Log.d(TAG, "loadBookFromUrl: Get book from storage");
 
-        StorageReference reference = FirebaseStorage.getInstance().getReferenceFromUrl(pdfUrl);
-        reference.getBytes(Constants.MAX_BYTES_PDF)
-                .addOnSuccessListener(new OnSuccessListener<byte[]>() {
-                    @Override
-                    public void onSuccess(byte[] bytes) {
-                        //load pdf using bytes
-                        binding.pdfView.fromBytes(bytes)
-                                .swipeHorizontal(true) //set false to scroll vertical, true to swipe horizontal
-                                .onPageChange(new OnPageChangeListener() {
-                                    @Override
-                                    public void onPageChanged(int page, int pageCount) {
-                                        //set current and total pages in toolbar subtitle
-                                        int currentPage = (page + 1); //do + 1 because page starts from 0
-                                        binding.toolbarSubtitleTv.setText(currentPage + "/" + pageCount); //e.g. 3/290
-                                        Log.d(TAG, "onPageChanged: " + currentPage + "/" + pageCount);
-                                    }
-                                })
-                                .onError(new OnErrorListener() {
-                                    @Override
-                                    public void onError(Throwable t) {
-                                        Toast.makeText(PdfViewActivity.this, "" + t.getMessage(), Toast.LENGTH_SHORT).show();
-                                        Log.d(TAG, "onError: " + t.getMessage());
-                                    }
-                                })
-                                .onPageError(new OnPageErrorListener() {
-                                    @Override
-                                    public void onPageError(int page, Throwable t) {
-                                        Toast.makeText(PdfViewActivity.this, "Error on page " + t.getMessage(), Toast.LENGTH_SHORT).show();
-                                        Log.d(TAG, "onPageError: " + t.getMessage());
-                                    }
-                                })
-                                .load();
-
-                        binding.progressBar.setVisibility(View.GONE);
-                    }
-                })
-                .addOnFailureListener(new OnFailureListener() {
-                    @Override
-                    public void onFailure(@NonNull Exception e) {
-                        //failed to load
-                        binding.progressBar.setVisibility(View.GONE);
-                        Log.d(TAG, "onFailure: " + e.getMessage());
-                    }
-                });
+        //open local copy of the book if there is one, otherwise stream it into book store first
+        BookStore bookStore = BookStore.getInstance();
+        boolean isLocal = bookStore.getIfPresent(pdfUrl) != null;
+        this.pdfUrl = pdfUrl;
+        bookCallback = new MyApplication.DownloadCallback() {
+            @Override
+            public void onProgress(long bytesTransferred, long totalBytes) {
+                Log.d(TAG, "onProgress: " + bytesTransferred + "/" + totalBytes);
+            }
+
+            @Override
+            public void onDownloaded(File file) {
+                //load pdf using file
+                binding.pdfView.fromFile(file)
+                        .swipeHorizontal(true) //set false to scroll vertical, true to swipe horizontal
+                        .onLoad(new OnLoadCompleteListener() {
+                            @Override
+                            public void loadComplete(int nbPages) {
+                                //open to first page latency, compare local vs network opens in logcat
+                                long latency = SystemClock.elapsedRealtime() - openTime;
+                                Log.d(TAG, "loadComplete: opened " + nbPages + " pages in " + latency + " ms, " + (isLocal ? "local copy" : "downloaded"));
+                            }
+                        })
+                        .onPageChange(new OnPageChangeListener() {
+                            @Override
+                            public void onPageChanged(int page, int pageCount) {
+                                //set current and total pages in toolbar subtitle
+                                int currentPage = (page + 1); //do + 1 because page starts from 0
+                                binding.toolbarSubtitleTv.setText(currentPage + "/" + pageCount); //e.g. 3/290
+                                Log.d(TAG, "onPageChanged: " + currentPage + "/" + pageCount);
+                            }
+                        })
+                        .onError(new OnErrorListener() {
+                            @Override
+                            public void onError(Throwable t) {
+                                Toast.makeText(PdfViewActivity.this, "" + t.getMessage(), Toast.LENGTH_SHORT).show();
+                                Log.d(TAG, "onError: " + t.getMessage());
+                            }
+                        })
+                        .onPageError(new OnPageErrorListener() {
+                            @Override
+                            public void onPageError(int page, Throwable t) {
+                                Toast.makeText(PdfViewActivity.this, "Error on page " + t.getMessage(), Toast.LENGTH_SHORT).show();
+                                Log.d(TAG, "onPageError: " + t.getMessage());
+                            }
+                        })
+                        .load();
+
+                binding.progressBar.setVisibility(View.GONE);
+            }
+
+            @Override
+            public void onFailure(Exception e) {
+                //failed to load
+                binding.progressBar.setVisibility(View.GONE);
+                Log.d(TAG, "onFailure: " + e.getMessage());
+            }
+        };
+        bookStore.fetch(pdfUrl, bookCallback);
     }
-}
\ No newline at end of file
+}
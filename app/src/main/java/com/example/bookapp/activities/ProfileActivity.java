@@ -2,6 +2,7 @@ package com.example.bookapp.activities;
 
 import android.content.Intent;
 import android.os.Bundle;
+import android.os.SystemClock;
 import android.util.Log;
 import android.view.View;
 
@@ -9,9 +10,12 @@ import androidx.annotation.NonNull;
 import androidx.appcompat.app.AppCompatActivity;
 
 import com.bumptech.glide.Glide;
+import com.example.bookapp.Constants;
 import com.example.bookapp.MyApplication;
 import com.example.bookapp.R;
 import com.example.bookapp.adapters.AdapterPdfFavorite;
+import com.example.bookapp.adapters.ThumbnailPrefetcher;
+import com.example.bookapp.cache.BookCache;
 import com.example.bookapp.databinding.ActivityProfileBinding;
 import com.example.bookapp.models.ModelPdf;
 import com.google.firebase.auth.FirebaseAuth;
@@ -22,6 +26,7 @@ import com.google.firebase.database.FirebaseDatabase;
 import com.google.firebase.database.ValueEventListener;
 
 import java.util.ArrayList;
+import java.util.List;
 
 public class ProfileActivity extends AppCompatActivity {
 
@@ -44,6 +49,10 @@ public class ProfileActivity extends AppCompatActivity {
         binding = ActivityProfileBinding.inflate(getLayoutInflater());
         setContentView(binding.getRoot());
 
+        //warm thumbnails of rows user scrolls towards
+        binding.booksRv.addOnScrollListener(new ThumbnailPrefetcher(binding.booksRv,
+                Constants.PREFETCH_ROWS, Constants.PREFETCH_MAX_CONCURRENT, Constants.PREFETCH_FLING_VELOCITY_DP));
+
         //setup firebase auth
         firebaseAuth = FirebaseAuth.getInstance();
         loadUserInfo();
@@ -67,6 +76,9 @@ public class ProfileActivity extends AppCompatActivity {
         });
     }
 
+    //favorites changed while books of previous change were loading, that result is dropped
+    private int favoritesGeneration = 0;
+
     private void loadFavoriteBooks() {
         //init list
         pdfArrayList = new ArrayList<>();
@@ -78,28 +90,35 @@ public class ProfileActivity extends AppCompatActivity {
                 .addValueEventListener(new ValueEventListener() {
                     @Override
                     public void onDataChange(@NonNull DataSnapshot snapshot) {
-                        //clear arrayList before adding to list
-                        pdfArrayList.clear();
-
+                        //we will only get bookIds here, books are loaded all at once from book cache
+                        ArrayList<String> bookIds = new ArrayList<>();
                         for (DataSnapshot ds : snapshot.getChildren()) {
-                            //we will only get bookId here, all the other details we will get from adapter
-                            String bookId = "" + ds.child("bookId").getValue();
-
-                            //set id to model
-                            ModelPdf modelPdf = new ModelPdf();
-                            modelPdf.setId(bookId);
-
-                            //add model to list
-                            pdfArrayList.add(modelPdf);
+                            bookIds.add("" + ds.child("bookId").getValue());
                         }
 
                         //set number of favorite books
-                        binding.favoriteBookCountTv.setText("" + pdfArrayList.size());
-
-                        //setup adapter
-                        adapterPdfFavorite = new AdapterPdfFavorite(ProfileActivity.this,pdfArrayList);
-                        //set adapter to recyclerView
-                        binding.booksRv.setAdapter(adapterPdfFavorite);
+                        binding.favoriteBookCountTv.setText("" + bookIds.size());
+
+                        int generation = ++favoritesGeneration;
+                        long startTime = SystemClock.elapsedRealtime();
+                        BookCache.getInstance().getAll(bookIds, new BookCache.Callback() {
+                            @Override
+                            public void onBooks(List<ModelPdf> books) {
+                                if (generation != favoritesGeneration || isDestroyed()) {
+                                    return;
+                                }
+                                Log.d(TAG, "onBooks: " + books.size() + " favorite books loaded in " + (SystemClock.elapsedRealtime() - startTime) + " ms");
+
+                                //clear arrayList before adding to list
+                                pdfArrayList.clear();
+                                pdfArrayList.addAll(books);
+
+                                //setup adapter
+                                adapterPdfFavorite = new AdapterPdfFavorite(ProfileActivity.this,pdfArrayList);
+                                //set adapter to recyclerView
+                                binding.booksRv.setAdapter(adapterPdfFavorite);
+                            }
+                        });
                     }
 
                     @Override
@@ -3,6 +3,7 @@ package com.example.bookapp.activities;
 import android.app.Activity;
 import android.app.ProgressDialog;
 import android.content.ContentValues;
+import android.content.DialogInterface;
 import android.content.Intent;
 import android.net.Uri;
 import android.os.Bundle;
@@ -24,7 +25,9 @@ import androidx.appcompat.app.AppCompatActivity;
 
 import com.bumptech.glide.Glide;
 import com.example.bookapp.R;
+import com.example.bookapp.cache.UserCache;
 import com.example.bookapp.databinding.ActivityProfileEditBinding;
+import com.example.bookapp.upload.UploadPipeline;
 import com.google.android.gms.tasks.OnFailureListener;
 import com.google.android.gms.tasks.OnSuccessListener;
 import com.google.android.gms.tasks.Task;
@@ -36,7 +39,6 @@ import com.google.firebase.database.FirebaseDatabase;
 import com.google.firebase.database.ValueEventListener;
 import com.google.firebase.storage.FirebaseStorage;
 import com.google.firebase.storage.StorageReference;
-import com.google.firebase.storage.UploadTask;
 
 import java.util.HashMap;
 
@@ -55,6 +57,9 @@ public class ProfileEditActivity extends AppCompatActivity {
 
     private Uri imageUri = null;
 
+    //running image upload, cancelled when user cancels the progress dialog
+    private UploadPipeline uploadPipeline;
+
     private String name = "";
 
     @Override
@@ -67,6 +72,16 @@ public class ProfileEditActivity extends AppCompatActivity {
         progressDialog = new ProgressDialog(this);
         progressDialog.setTitle("Please Wait");
         progressDialog.setCanceledOnTouchOutside(false);
+        progressDialog.setOnCancelListener(new DialogInterface.OnCancelListener() {
+            @Override
+            public void onCancel(DialogInterface dialog) {
+                //back pressed while uploading, stop the upload
+                if (uploadPipeline != null && uploadPipeline.getStage() != UploadPipeline.Stage.DONE) {
+                    uploadPipeline.cancel();
+                    Toast.makeText(ProfileEditActivity.this, "Upload cancelled", Toast.LENGTH_SHORT).show();
+                }
+            }
+        });
 
         //setup firebase auth
         firebaseAuth = FirebaseAuth.getInstance();
@@ -161,30 +176,47 @@ public class ProfileEditActivity extends AppCompatActivity {
 
         //storage reference
         StorageReference reference = FirebaseStorage.getInstance().getReference(filePathAndName);
-        reference.putFile(imageUri)
-                .addOnSuccessListener(new OnSuccessListener<UploadTask.TaskSnapshot>() {
-                    @Override
-                    public void onSuccess(UploadTask.TaskSnapshot taskSnapshot) {
-                        Log.d(TAG, "onSuccess: Profile Image uploaded");
-                        Log.d(TAG, "onSuccess: Getting Url of uploaded image");
+        uploadPipeline = new UploadPipeline(reference, imageUri, new UploadPipeline.RecordWriter() {
+            @Override
+            public Task<Void> write(String downloadUrl) {
+                Log.d(TAG, "write: Uploaded Image URL: " + downloadUrl);
+                progressDialog.setMessage("Updating user profile...");
+                return writeProfile(downloadUrl);
+            }
+        }, new UploadPipeline.Callback() {
+            @Override
+            public void onStage(UploadPipeline.Stage stage) {
+                if (stage == UploadPipeline.Stage.RESOLVE_URL) {
+                    Log.d(TAG, "onStage: Profile Image uploaded, getting Url of uploaded image");
+                }
+            }
+
+            @Override
+            public void onProgress(long bytesTransferred, long totalBytes) {
 
-                        Task<Uri> uriTask = taskSnapshot.getStorage().getDownloadUrl();
-                        while (!uriTask.isSuccessful()) ;
-                        String uploadedImageUrl = "" + uriTask.getResult();
+            }
 
-                        Log.d(TAG, "onSuccess: Uploaded Image URL: " + uploadedImageUrl);
+            @Override
+            public void onSuccess(String downloadUrl) {
+                Log.d(TAG, "onSuccess: Profile updated");
+                progressDialog.dismiss();
+                //comment rows show new name and image
+                UserCache.getInstance().invalidate(firebaseAuth.getUid());
+                Toast.makeText(ProfileEditActivity.this, "Profile Updated...", Toast.LENGTH_SHORT).show();
+            }
 
-                        updateProfile(uploadedImageUrl);
-                    }
-                })
-                .addOnFailureListener(new OnFailureListener() {
-                    @Override
-                    public void onFailure(@NonNull Exception e) {
-                        Log.d(TAG, "onFailure: Failed to upload image due to " + e.getMessage());
-                        progressDialog.dismiss();
-                        Toast.makeText(ProfileEditActivity.this, "Failed to upload image due to " + e.getMessage(), Toast.LENGTH_SHORT).show();
-                    }
-                });
+            @Override
+            public void onFailure(UploadPipeline.Stage stage, Exception e) {
+                progressDialog.dismiss();
+                if (stage == UploadPipeline.Stage.WRITE_RECORD) {
+                    Log.d(TAG, "onFailure: Failed to update in db due to " + e.getMessage());
+                    Toast.makeText(ProfileEditActivity.this, "Failed to update in db due to " + e.getMessage(), Toast.LENGTH_SHORT).show();
+                } else {
+                    Log.d(TAG, "onFailure: Failed to upload image due to " + e.getMessage());
+                    Toast.makeText(ProfileEditActivity.this, "Failed to upload image due to " + e.getMessage(), Toast.LENGTH_SHORT).show();
+                }
+            }
+        }).start();
     }
 
     private void updateProfile(String imageUrl) {
@@ -192,22 +224,14 @@ public class ProfileEditActivity extends AppCompatActivity {
         progressDialog.setMessage("Updating user profile...");
         progressDialog.show();
 
-        //setup data to update in db
-        HashMap<String, Object> hashMap = new HashMap<>();
-        hashMap.put("name", "" + name);
-        if (imageUri != null) {
-            hashMap.put("profileImage", "" + imageUrl);
-        }
-
-        //update data to db
-        DatabaseReference databaseReference = FirebaseDatabase.getInstance().getReference("Users");
-        databaseReference.child(firebaseAuth.getUid())
-                .updateChildren(hashMap)
+        writeProfile(imageUrl)
                 .addOnSuccessListener(new OnSuccessListener<Void>() {
                     @Override
                     public void onSuccess(Void unused) {
                         Log.d(TAG, "onSuccess: Profile updated");
                         progressDialog.dismiss();
+                        //comment rows show new name and image
+                        UserCache.getInstance().invalidate(firebaseAuth.getUid());
                         Toast.makeText(ProfileEditActivity.this, "Profile Updated...", Toast.LENGTH_SHORT).show();
                     }
                 })
@@ -221,6 +245,20 @@ public class ProfileEditActivity extends AppCompatActivity {
                 });
     }
 
+    private Task<Void> writeProfile(String imageUrl) {
+        //setup data to update in db
+        HashMap<String, Object> hashMap = new HashMap<>();
+        hashMap.put("name", "" + name);
+        if (imageUri != null) {
+            hashMap.put("profileImage", "" + imageUrl);
+        }
+
+        //update data to db
+        DatabaseReference databaseReference = FirebaseDatabase.getInstance().getReference("Users");
+        return databaseReference.child(firebaseAuth.getUid())
+                .updateChildren(hashMap);
+    }
+
     private void showImageAttachMenu() {
         //init/setup popup menu
         PopupMenu popupMenu = new PopupMenu(this, binding.profileIv);
@@ -4,6 +4,7 @@ import android.app.AlertDialog;
 import android.content.Context;
 import android.content.DialogInterface;
 import android.content.Intent;
+import android.text.TextUtils;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
@@ -14,8 +15,11 @@ import android.widget.TextView;
 import android.widget.Toast;
 
 import androidx.annotation.NonNull;
+import androidx.recyclerview.widget.DiffUtil;
+import androidx.recyclerview.widget.ListAdapter;
 import androidx.recyclerview.widget.RecyclerView;
 
+import com.example.bookapp.MyApplication;
 import com.example.bookapp.activities.PdfListAdminActivity;
 import com.example.bookapp.filters.FilterCategory;
 import com.example.bookapp.models.ModelCategory;
@@ -26,11 +30,27 @@ import com.google.firebase.database.DatabaseReference;
 import com.google.firebase.database.FirebaseDatabase;
 
 import java.util.ArrayList;
+import java.util.List;
 
-public class AdapterCategory extends RecyclerView.Adapter<AdapterCategory.HolderCategory> implements Filterable {
+public class AdapterCategory extends ListAdapter<ModelCategory, AdapterCategory.HolderCategory> implements Filterable {
+
+    //same category is same id, row shows only the name
+    private static final DiffUtil.ItemCallback<ModelCategory> DIFF_CALLBACK = new DiffUtil.ItemCallback<ModelCategory>() {
+        @Override
+        public boolean areItemsTheSame(@NonNull ModelCategory oldCategory, @NonNull ModelCategory newCategory) {
+            return TextUtils.equals(oldCategory.getId(), newCategory.getId());
+        }
+
+        @Override
+        public boolean areContentsTheSame(@NonNull ModelCategory oldCategory, @NonNull ModelCategory newCategory) {
+            return TextUtils.equals(oldCategory.getCategory(), newCategory.getCategory());
+        }
+    };
 
     private Context context;
-    public ArrayList<ModelCategory> categoryArrayList, filterList;
+    //all categories, search runs over them; current search, empty shows all categories
+    public ArrayList<ModelCategory> filterList = new ArrayList<>();
+    private CharSequence constraint = "";
 
     //view binding
     private RowCategoryBinding binding;
@@ -39,9 +59,11 @@ public class AdapterCategory extends RecyclerView.Adapter<AdapterCategory.Holder
     private FilterCategory filter;
 
     public AdapterCategory(Context context, ArrayList<ModelCategory> categoryArrayList) {
+        super(DIFF_CALLBACK);
         this.context = context;
-        this.categoryArrayList = categoryArrayList;
-        this.filterList = categoryArrayList;
+        //rows keep their views when list changes, only changed categories are bound again
+        setHasStableIds(true);
+        setCategories(categoryArrayList);
     }
 
     @NonNull
@@ -55,7 +77,7 @@ public class AdapterCategory extends RecyclerView.Adapter<AdapterCategory.Holder
     @Override
     public void onBindViewHolder(@NonNull AdapterCategory.HolderCategory holder, int position) {
         //get data
-        ModelCategory model = categoryArrayList.get(position);
+        ModelCategory model = getItem(position);
         String id = model.getId();
         String category = model.getCategory();
         String uid = model.getUid();
@@ -125,15 +147,32 @@ public class AdapterCategory extends RecyclerView.Adapter<AdapterCategory.Holder
                 });
     }
 
+
+    //new db list, search is applied again to it
+    public void setCategories(List<ModelCategory> items) {
+        filterList = new ArrayList<>(items);
+        if (TextUtils.isEmpty(constraint)) {
+            submitList(filterList);
+        } else {
+            getFilter().filter(constraint);
+        }
+    }
+
+    //called by filter with the items matching constraint
+    public void submitFiltered(CharSequence constraint, List<ModelCategory> items) {
+        this.constraint = constraint;
+        submitList(items);
+    }
+
     @Override
-    public int getItemCount() {
-        return categoryArrayList.size();
+    public long getItemId(int position) {
+        return MyApplication.getStableId(getItem(position).getId());
     }
 
     @Override
     public Filter getFilter() {
         if (filter == null) {
-            filter = new FilterCategory(filterList, this);
+            filter = new FilterCategory(this);
 
         }
         return filter;
@@ -15,17 +15,18 @@ import androidx.recyclerview.widget.RecyclerView;
 import com.bumptech.glide.Glide;
 import com.example.bookapp.MyApplication;
 import com.example.bookapp.R;
+import com.example.bookapp.RowLoadHandle;
+import com.example.bookapp.cache.RequestCoalescer;
+import com.example.bookapp.cache.UserCache;
 import com.example.bookapp.databinding.RowCommentBinding;
 import com.example.bookapp.models.ModelComment;
+import com.example.bookapp.models.ModelUserSummary;
 import com.google.android.gms.tasks.OnFailureListener;
 import com.google.android.gms.tasks.OnSuccessListener;
 import com.google.android.material.imageview.ShapeableImageView;
 import com.google.firebase.auth.FirebaseAuth;
-import com.google.firebase.database.DataSnapshot;
-import com.google.firebase.database.DatabaseError;
 import com.google.firebase.database.DatabaseReference;
 import com.google.firebase.database.FirebaseDatabase;
-import com.google.firebase.database.ValueEventListener;
 
 import java.util.ArrayList;
 
@@ -78,6 +79,11 @@ public class AdapterComment extends RecyclerView.Adapter<AdapterComment.HolderCo
         holder.commentTv.setText(comment);
 
         //we don't have user's name and profile picture, so we will load it using uid we stored in each comment
+        holder.loads.bind(id);
+        //recycled row still shows author of its previous comment, clear it until this one is known
+        holder.nameTv.setText("");
+        Glide.with(context).clear(holder.profileIv);
+        holder.profileIv.setImageResource(R.drawable.ic_person_gray);
         loadUserDetails(modelComment, holder);
 
         //handle click, show option to delete comment
@@ -105,15 +111,20 @@ public class AdapterComment extends RecyclerView.Adapter<AdapterComment.HolderCo
                     public void onClick(DialogInterface dialogInterface, int which) {
                         //Delete from dialog clicked, begin delete
 
-                        DatabaseReference ref = FirebaseDatabase.getInstance().getReference("Books");
+                        DatabaseReference ref = FirebaseDatabase.getInstance().getReference("Comments");
                         ref.child(modelComment.getBookId())
-                                .child("Comments")
                                 .child(modelComment.getId())
                                 .removeValue()
                                 .addOnSuccessListener(new OnSuccessListener<Void>() {
                                     @Override
                                     public void onSuccess(Void unused) {
                                         Toast.makeText(context, "Deleted...", Toast.LENGTH_SHORT).show();
+                                        //older pages aren't live, drop the row here; live ones are already gone
+                                        int position = commentArrayList.indexOf(modelComment);
+                                        if (position >= 0) {
+                                            commentArrayList.remove(position);
+                                            notifyItemRemoved(position);
+                                        }
                                     }
                                 })
                                 .addOnFailureListener(new OnFailureListener() {
@@ -136,34 +147,49 @@ public class AdapterComment extends RecyclerView.Adapter<AdapterComment.HolderCo
 
     private void loadUserDetails(ModelComment modelComment, HolderComment holder) {
         String uid = modelComment.getUid();
+        String commentId = modelComment.getId();
 
-        DatabaseReference ref = FirebaseDatabase.getInstance().getReference("Users");
-        ref.child(uid)
-                .addListenerForSingleValueEvent(new ValueEventListener() {
-                    @Override
-                    public void onDataChange(@NonNull DataSnapshot snapshot) {
-                        //get data
-                        String name ="" + snapshot.child("name").getValue();
-                        String profileImage = "" + snapshot.child("profileImage").getValue();
-
-                        //set data
-                        holder.nameTv.setText(name);
-                        try {
-                            Glide.with(context)
-                                    .load(profileImage)
-                                    .placeholder(R.drawable.ic_person_gray)
-                                    .into(holder.profileIv);
-                        }
-                        catch (Exception e) {
-                            holder.profileIv.setImageResource(R.drawable.ic_person_gray);
-                        }
-                    }
+        //author from user cache, comments of same author share one read
+        RequestCoalescer.Callback<ModelUserSummary> callback = new RequestCoalescer.Callback<ModelUserSummary>() {
+            @Override
+            public void onResult(ModelUserSummary user) {
+                //row was bound to another comment meanwhile
+                if (!holder.loads.isBoundTo(commentId)) {
+                    return;
+                }
 
-                    @Override
-                    public void onCancelled(@NonNull DatabaseError error) {
+                //set data
+                holder.nameTv.setText(user.getName());
+                try {
+                    Glide.with(context)
+                            .load(user.getProfileImage())
+                            .placeholder(R.drawable.ic_person_gray)
+                            .into(holder.profileIv);
+                }
+                catch (Exception e) {
+                    holder.profileIv.setImageResource(R.drawable.ic_person_gray);
+                }
+            }
 
-                    }
-                });
+            @Override
+            public void onFailure(Exception e) {
+
+            }
+        };
+        UserCache.getInstance().get(uid, callback);
+        holder.loads.addCanceller(new Runnable() {
+            @Override
+            public void run() {
+                UserCache.getInstance().cancel(uid, callback);
+            }
+        });
+    }
+
+    @Override
+    public void onViewRecycled(@NonNull HolderComment holder) {
+        super.onViewRecycled(holder);
+        //row scrolled off screen, stop waiting for its author
+        holder.loads.cancel();
     }
 
     @Override
@@ -178,6 +204,9 @@ public class AdapterComment extends RecyclerView.Adapter<AdapterComment.HolderCo
         ShapeableImageView profileIv;
         TextView nameTv,dateTv,commentTv;
 
+        //loads started for the comment this row shows
+        RowLoadHandle loads = new RowLoadHandle();
+
         public HolderComment(@NonNull View itemView) {
             super(itemView);
 
@@ -5,34 +5,39 @@ import android.app.ProgressDialog;
 import android.content.Context;
 import android.content.DialogInterface;
 import android.content.Intent;
+import android.text.TextUtils;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
 import android.widget.Filter;
 import android.widget.Filterable;
 import android.widget.ImageButton;
+import android.widget.ImageView;
 import android.widget.ProgressBar;
 import android.widget.TextView;
 
 import androidx.annotation.NonNull;
+import androidx.recyclerview.widget.ListAdapter;
 import androidx.recyclerview.widget.RecyclerView;
 
 import com.example.bookapp.MyApplication;
+import com.example.bookapp.RowLoadHandle;
 import com.example.bookapp.activities.PdfDetailActivity;
 import com.example.bookapp.activities.PdfEditActivity;
 import com.example.bookapp.databinding.RowPdfAdminBinding;
 import com.example.bookapp.filters.FilterPdfAdmin;
 import com.example.bookapp.models.ModelPdf;
-import com.github.barteksc.pdfviewer.PDFView;
 
 import java.util.ArrayList;
+import java.util.List;
 
-public class AdapterPdfAdmin extends RecyclerView.Adapter<AdapterPdfAdmin.HolderPdfAdmin> implements Filterable {
+public class AdapterPdfAdmin extends ListAdapter<ModelPdf, AdapterPdfAdmin.HolderPdfAdmin> implements Filterable, ThumbnailPrefetcher.BookSource {
 
     //context
     private Context context;
-    //arrayList to hold list of data of type modelPdf
-    public ArrayList<ModelPdf> pdfArrayList, filterList;
+    //all books of the list, search runs over them; current search, empty shows all books
+    public ArrayList<ModelPdf> filterList = new ArrayList<>();
+    private CharSequence constraint = "";
 
     //view binding of row_pdf_admin.xml
     private RowPdfAdminBinding binding;
@@ -46,9 +51,11 @@ public class AdapterPdfAdmin extends RecyclerView.Adapter<AdapterPdfAdmin.Holder
 
     //constructor of above
     public AdapterPdfAdmin(Context context, ArrayList<ModelPdf> pdfArrayList) {
+        super(new BookDiffCallback());
         this.context = context;
-        this.pdfArrayList = pdfArrayList;
-        this.filterList = pdfArrayList;
+        //rows keep their views when list changes, only changed books are bound again
+        setHasStableIds(true);
+        setBooks(pdfArrayList);
 
         //init progress dialog
         progressDialog = new ProgressDialog(context);
@@ -69,13 +76,16 @@ public class AdapterPdfAdmin extends RecyclerView.Adapter<AdapterPdfAdmin.Holder
         /*Get data, Set Data, handle clicks, etc.*/
 
         //get data
-        ModelPdf model = pdfArrayList.get(position);
+        ModelPdf model = getItem(position);
         String pdfId = model.getId();
         String categoryId = model.getCategoryId();
         String title = model.getTitle();
         String description = model.getDescription();
         String pdfUrl = model.getUrl();
         long timestamp = model.getTimestamp();
+        //cancel loads of the book this row showed before, results of them are dropped
+        holder.loads.bind(pdfId);
+
         //we need to convert timestamp into DD/MM/YYYY format
         String formattedDate = MyApplication.formatTimestamp(timestamp);
 
@@ -87,20 +97,24 @@ public class AdapterPdfAdmin extends RecyclerView.Adapter<AdapterPdfAdmin.Holder
         //load further details like category, pdf from url, pdf size in separate functions
         MyApplication.loadCategory(
                 "" + categoryId,
-                holder.categoryTv
+                holder.categoryTv,
+                holder.loads
         );
-        //we don't need page number here, pass null
-        MyApplication.loadPdfFromUrlSinglePage(
+        MyApplication.loadPdfThumbnail(
+                "" + pdfId,
+                model.getCoverUrl(),
                 "" + pdfUrl,
                 "" + title,
-                holder.pdfView,
+                holder.thumbnailIv,
                 holder.progressBar,
-                null
+                holder.loads
         );
         MyApplication.loadPdfSize(
+                model.getSizeBytes(),
                 "" + pdfUrl,
                 "" + title,
-                holder.sizeTv
+                holder.sizeTv,
+                holder.loads
         );
 
         //handle click, show dialog with options 1) Edit, 2) Delete
@@ -157,15 +171,44 @@ public class AdapterPdfAdmin extends RecyclerView.Adapter<AdapterPdfAdmin.Holder
     }
 
     @Override
-    public int getItemCount() {
-        //return size of arrayList
-        return pdfArrayList.size();
+    public void onViewRecycled(@NonNull HolderPdfAdmin holder) {
+        super.onViewRecycled(holder);
+        //row scrolled off screen, stop loading its thumbnail, size, category
+        holder.loads.cancel();
+    }
+
+
+    //new db list, search is applied again to it
+    public void setBooks(List<ModelPdf> items) {
+        filterList = new ArrayList<>(items);
+        if (TextUtils.isEmpty(constraint)) {
+            submitList(filterList);
+        } else {
+            getFilter().filter(constraint);
+        }
+    }
+
+    //called by filter with the items matching constraint
+    public void submitFiltered(CharSequence constraint, List<ModelPdf> items) {
+        this.constraint = constraint;
+        submitList(items);
+    }
+
+    @Override
+    public long getItemId(int position) {
+        return MyApplication.getStableId(getItem(position).getId());
+    }
+
+    //ThumbnailPrefetcher reads books of rows not bound yet
+    @Override
+    public ModelPdf getBook(int position) {
+        return getItem(position);
     }
 
     @Override
     public Filter getFilter() {
         if (filter == null) {
-            filter = new FilterPdfAdmin(filterList, this);
+            filter = new FilterPdfAdmin(this);
         }
         return filter;
     }
@@ -174,16 +217,19 @@ public class AdapterPdfAdmin extends RecyclerView.Adapter<AdapterPdfAdmin.Holder
     class HolderPdfAdmin extends RecyclerView.ViewHolder {
 
         //UI views of row_pdf_admin.xml
-        PDFView pdfView;
+        ImageView thumbnailIv;
         ProgressBar progressBar;
         TextView titleTv, descriptionTv, categoryTv, sizeTv, dateTv;
         ImageButton moreBtn;
 
+        //loads started for the book bound to this row
+        RowLoadHandle loads = new RowLoadHandle();
+
         public HolderPdfAdmin(@NonNull View itemView) {
             super(itemView);
 
             //init ui views
-            pdfView = binding.pdfView;
+            thumbnailIv = binding.thumbnailIv;
             progressBar = binding.progressBar;
             titleTv = binding.titleTv;
             descriptionTv = binding.descriptionTv;
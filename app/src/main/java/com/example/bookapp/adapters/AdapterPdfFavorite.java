@@ -7,6 +7,7 @@ import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
 import android.widget.ImageButton;
+import android.widget.ImageView;
 import android.widget.ProgressBar;
 import android.widget.TextView;
 
@@ -14,19 +15,14 @@ import androidx.annotation.NonNull;
 import androidx.recyclerview.widget.RecyclerView;
 
 import com.example.bookapp.MyApplication;
+import com.example.bookapp.RowLoadHandle;
 import com.example.bookapp.activities.PdfDetailActivity;
 import com.example.bookapp.databinding.RowPdfFavoriteBinding;
 import com.example.bookapp.models.ModelPdf;
-import com.github.barteksc.pdfviewer.PDFView;
-import com.google.firebase.database.DataSnapshot;
-import com.google.firebase.database.DatabaseError;
-import com.google.firebase.database.DatabaseReference;
-import com.google.firebase.database.FirebaseDatabase;
-import com.google.firebase.database.ValueEventListener;
 
 import java.util.ArrayList;
 
-public class AdapterPdfFavorite extends RecyclerView.Adapter<AdapterPdfFavorite.HolderPdfFavorite> {
+public class AdapterPdfFavorite extends RecyclerView.Adapter<AdapterPdfFavorite.HolderPdfFavorite> implements ThumbnailPrefetcher.BookSource {
 
     private Context context;
     private ArrayList<ModelPdf> pdfArrayList;
@@ -56,6 +52,8 @@ public class AdapterPdfFavorite extends RecyclerView.Adapter<AdapterPdfFavorite.
         /*---Get data, set data, handle click---*/
         ModelPdf model = pdfArrayList.get(position);
 
+        //cancel loads of the book this row showed before, results of them are dropped
+        holder.loads.bind(model.getId());
         loadBookDetails(model, holder);
 
         //handle click, open pdf details page
@@ -81,49 +79,28 @@ public class AdapterPdfFavorite extends RecyclerView.Adapter<AdapterPdfFavorite.
         String bookId = model.getId();
         Log.d(TAG, "loadBookDetails: Book details of Book ID: "+bookId);
 
-        DatabaseReference ref = FirebaseDatabase.getInstance().getReference("Books");
-        ref.child(bookId)
-                .addListenerForSingleValueEvent(new ValueEventListener() {
-                    @Override
-                    public void onDataChange(@NonNull DataSnapshot snapshot) {
-
-                        //get book info
-                        String bookTitle = "" + snapshot.child("title").getValue();
-                        String description = "" + snapshot.child("description").getValue();
-                        String categoryId = "" + snapshot.child("categoryId").getValue();
-                        String bookUrl = "" + snapshot.child("url").getValue();
-                        String timestamp = "" + snapshot.child("timestamp").getValue();
-                        String uid = "" + snapshot.child("uid").getValue();
-                        String viewsCount = "" + snapshot.child("viewsCount").getValue();
-                        String downloadsCount = "" + snapshot.child("downloadsCount").getValue();
-
-                        //set to model
-                        model.setFavorite(true);
-                        model.setTitle(bookTitle);
-                        model.setDescription(description);
-                        model.setTimestamp(Long.parseLong(timestamp));
-                        model.setCategoryId(categoryId);
-                        model.setUid(uid);
-                        model.setUrl(bookUrl);
-
-                        //format date
-                        String date = MyApplication.formatTimestamp(Long.parseLong(timestamp));
-
-                        MyApplication.loadCategory(categoryId, holder.categoryTv);
-                        MyApplication.loadPdfFromUrlSinglePage(""+bookUrl,""+bookTitle,holder.pdfView, holder.progressBar, null);
-                        MyApplication.loadPdfSize(""+bookUrl,""+bookTitle, holder.sizeTv);
-
-                        //set data to views
-                        holder.titleTv.setText(bookTitle);
-                        holder.descriptionTv.setText(description);
-                        holder.dateTv.setText(date);
-                    }
-
-                    @Override
-                    public void onCancelled(@NonNull DatabaseError error) {
-
-                    }
-                });
+        //book was loaded with the whole favorites list, only category, thumbnail and size are loaded per row
+        String bookTitle = model.getTitle();
+        String bookUrl = model.getUrl();
+
+        //format date
+        String date = MyApplication.formatTimestamp(model.getTimestamp());
+
+        MyApplication.loadCategory(model.getCategoryId(), holder.categoryTv, holder.loads);
+        MyApplication.loadPdfThumbnail(""+bookId, model.getCoverUrl(), ""+bookUrl, ""+bookTitle, holder.thumbnailIv, holder.progressBar, holder.loads);
+        MyApplication.loadPdfSize(model.getSizeBytes(), ""+bookUrl,""+bookTitle, holder.sizeTv, holder.loads);
+
+        //set data to views
+        holder.titleTv.setText(bookTitle);
+        holder.descriptionTv.setText(model.getDescription());
+        holder.dateTv.setText(date);
+    }
+
+    @Override
+    public void onViewRecycled(@NonNull HolderPdfFavorite holder) {
+        super.onViewRecycled(holder);
+        //row scrolled off screen, stop loading its details, thumbnail, size, category
+        holder.loads.cancel();
     }
 
     @Override
@@ -131,19 +108,28 @@ public class AdapterPdfFavorite extends RecyclerView.Adapter<AdapterPdfFavorite.
         return pdfArrayList.size();
     }
 
+    //ThumbnailPrefetcher reads books of rows not bound yet
+    @Override
+    public ModelPdf getBook(int position) {
+        return pdfArrayList.get(position);
+    }
+
     //ViewHolder class
     class HolderPdfFavorite extends RecyclerView.ViewHolder{
 
-        PDFView pdfView;
+        ImageView thumbnailIv;
         ProgressBar progressBar;
         TextView titleTv, descriptionTv, categoryTv, sizeTv, dateTv;
         ImageButton removeFavBtn;
 
+        //loads started for the book bound to this row
+        RowLoadHandle loads = new RowLoadHandle();
+
         public HolderPdfFavorite(@NonNull View itemView) {
             super(itemView);
 
             //init ui views of row_pdf_favorite.xml
-            pdfView = binding.pdfView;
+            thumbnailIv = binding.thumbnailIv;
             progressBar = binding.progressBar;
             titleTv = binding.titleTv;
             descriptionTv = binding.descriptionTv;
@@ -2,30 +2,36 @@ package com.example.bookapp.adapters;
 
 import android.content.Context;
 import android.content.Intent;
+import android.text.TextUtils;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
 import android.widget.Filter;
 import android.widget.Filterable;
+import android.widget.ImageView;
 import android.widget.ProgressBar;
 import android.widget.TextView;
 
 import androidx.annotation.NonNull;
+import androidx.recyclerview.widget.ListAdapter;
 import androidx.recyclerview.widget.RecyclerView;
 
 import com.example.bookapp.MyApplication;
+import com.example.bookapp.RowLoadHandle;
 import com.example.bookapp.activities.PdfDetailActivity;
 import com.example.bookapp.databinding.RowPdfUserBinding;
 import com.example.bookapp.filters.FilterPdfUser;
 import com.example.bookapp.models.ModelPdf;
-import com.github.barteksc.pdfviewer.PDFView;
 
 import java.util.ArrayList;
+import java.util.List;
 
-public class AdapterPdfUser extends RecyclerView.Adapter<AdapterPdfUser.HolderPdfUser> implements Filterable {
+public class AdapterPdfUser extends ListAdapter<ModelPdf, AdapterPdfUser.HolderPdfUser> implements Filterable, ThumbnailPrefetcher.BookSource {
 
     private Context context;
-    public ArrayList<ModelPdf> pdfArrayList,filterList;
+    //all books of the list, search runs over them; current search, empty shows all books
+    public ArrayList<ModelPdf> filterList = new ArrayList<>();
+    private CharSequence constraint = "";
     private FilterPdfUser filter;
 
     private RowPdfUserBinding binding;
@@ -33,9 +39,11 @@ public class AdapterPdfUser extends RecyclerView.Adapter<AdapterPdfUser.HolderPd
     public static final String TAG = "ADAPTER_PDF_USER_TAG";
 
     public AdapterPdfUser(Context context, ArrayList<ModelPdf> pdfArrayList) {
+        super(new BookDiffCallback());
         this.context = context;
-        this.pdfArrayList = pdfArrayList;
-        this.filterList = pdfArrayList;
+        //rows keep their views when list changes, only changed books are bound again
+        setHasStableIds(true);
+        setBooks(pdfArrayList);
     }
 
     @Override
@@ -50,7 +58,7 @@ public class AdapterPdfUser extends RecyclerView.Adapter<AdapterPdfUser.HolderPd
         //Get data, Set data, handle click, etc.
 
         //get data
-        ModelPdf model = pdfArrayList.get(position);
+        ModelPdf model = getItem(position);
         String bookId = model.getId();
         String title = model.getTitle();
         String description = model.getDescription();
@@ -58,6 +66,9 @@ public class AdapterPdfUser extends RecyclerView.Adapter<AdapterPdfUser.HolderPd
         String pdfUrl = model.getUrl();
         long timestamp = model.getTimestamp();
 
+        //cancel loads of the book this row showed before, results of them are dropped
+        holder.loads.bind(bookId);
+
         //convert time
         String date = MyApplication.formatTimestamp(timestamp);
 
@@ -68,20 +79,24 @@ public class AdapterPdfUser extends RecyclerView.Adapter<AdapterPdfUser.HolderPd
 
         MyApplication.loadCategory(
                 ""+categoryId,
-                holder.categoryTv
+                holder.categoryTv,
+                holder.loads
         );
-        //we don't need page number here, pass null
-        MyApplication.loadPdfFromUrlSinglePage(
-               ""+pdfUrl,
+        MyApplication.loadPdfThumbnail(
+                ""+bookId,
+                model.getCoverUrl(),
+                ""+pdfUrl,
                 ""+title,
-                holder.pdfView,
+                holder.thumbnailIv,
                 holder.progressBar,
-                null
+                holder.loads
         );
         MyApplication.loadPdfSize(
+                model.getSizeBytes(),
                 ""+pdfUrl,
                 ""+title,
-                holder.sizeTv
+                holder.sizeTv,
+                holder.loads
         );
 
         //handle click, show pdf details
@@ -96,14 +111,44 @@ public class AdapterPdfUser extends RecyclerView.Adapter<AdapterPdfUser.HolderPd
     }
 
     @Override
-    public int getItemCount() {
-        return pdfArrayList.size(); //returns list size/number of counts
+    public void onViewRecycled(@NonNull HolderPdfUser holder) {
+        super.onViewRecycled(holder);
+        //row scrolled off screen, stop loading its thumbnail, size, category
+        holder.loads.cancel();
+    }
+
+
+    //new db list, search is applied again to it
+    public void setBooks(List<ModelPdf> items) {
+        filterList = new ArrayList<>(items);
+        if (TextUtils.isEmpty(constraint)) {
+            submitList(filterList);
+        } else {
+            getFilter().filter(constraint);
+        }
+    }
+
+    //called by filter with the items matching constraint
+    public void submitFiltered(CharSequence constraint, List<ModelPdf> items) {
+        this.constraint = constraint;
+        submitList(items);
+    }
+
+    @Override
+    public long getItemId(int position) {
+        return MyApplication.getStableId(getItem(position).getId());
+    }
+
+    //ThumbnailPrefetcher reads books of rows not bound yet
+    @Override
+    public ModelPdf getBook(int position) {
+        return getItem(position);
     }
 
     @Override
     public Filter getFilter() {
         if (filter==null){
-            filter = new FilterPdfUser(filterList,this);
+            filter = new FilterPdfUser(this);
         }
         return filter;
     }
@@ -111,9 +156,12 @@ public class AdapterPdfUser extends RecyclerView.Adapter<AdapterPdfUser.HolderPd
     class HolderPdfUser extends RecyclerView.ViewHolder {
 
         TextView titleTv,descriptionTv,sizeTv,dateTv,categoryTv;
-        PDFView pdfView;
+        ImageView thumbnailIv;
         ProgressBar progressBar;
 
+        //loads started for the book bound to this row
+        RowLoadHandle loads = new RowLoadHandle();
+
         public HolderPdfUser(@NonNull View itemView) {
             super(itemView);
 
@@ -122,7 +170,7 @@ public class AdapterPdfUser extends RecyclerView.Adapter<AdapterPdfUser.HolderPd
             sizeTv = binding.sizeTv;
             dateTv = binding.dateTv;
             categoryTv = binding.categoryTv;
-            pdfView = binding.pdfView;
+            thumbnailIv = binding.thumbnailIv;
             progressBar = binding.progressBar;
         }
     }
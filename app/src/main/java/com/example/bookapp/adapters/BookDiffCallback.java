@@ -0,0 +1,31 @@
+package com.example.bookapp.adapters;
+
+import androidx.annotation.NonNull;
+import androidx.recyclerview.widget.DiffUtil;
+
+import com.example.bookapp.models.ModelPdf;
+
+import java.util.Objects;
+
+/*Tells book list adapters which rows changed, only those are bound again
+* - same book is same id
+* - contents are the fields a book row shows, e.g. a changed view count doesn't rebind the row
+* - free of android classes, so bind counts of list updates are checked in host unit tests*/
+public class BookDiffCallback extends DiffUtil.ItemCallback<ModelPdf> {
+
+    @Override
+    public boolean areItemsTheSame(@NonNull ModelPdf oldBook, @NonNull ModelPdf newBook) {
+        return Objects.equals(oldBook.getId(), newBook.getId());
+    }
+
+    @Override
+    public boolean areContentsTheSame(@NonNull ModelPdf oldBook, @NonNull ModelPdf newBook) {
+        return Objects.equals(oldBook.getTitle(), newBook.getTitle())
+                && Objects.equals(oldBook.getDescription(), newBook.getDescription())
+                && Objects.equals(oldBook.getCategoryId(), newBook.getCategoryId())
+                && Objects.equals(oldBook.getUrl(), newBook.getUrl())
+                && Objects.equals(oldBook.getCoverUrl(), newBook.getCoverUrl())
+                && oldBook.getTimestamp() == newBook.getTimestamp()
+                && oldBook.getSizeBytes() == newBook.getSizeBytes();
+    }
+}
@@ -0,0 +1,35 @@
+package com.example.bookapp.adapters;
+
+import androidx.annotation.NonNull;
+import androidx.recyclerview.widget.LinearLayoutManager;
+import androidx.recyclerview.widget.RecyclerView;
+
+/*Asks for the next page of a paged list when user scrolls within thresholdRows of its end
+* - called again on every scroll near the end, callback ignores calls while a page is loading*/
+public class LoadMoreListener extends RecyclerView.OnScrollListener {
+
+    public interface Callback {
+        void onLoadMore();
+    }
+
+    private final int thresholdRows;
+    private final Callback callback;
+
+    public LoadMoreListener(int thresholdRows, Callback callback) {
+        this.thresholdRows = thresholdRows;
+        this.callback = callback;
+    }
+
+    @Override
+    public void onScrolled(@NonNull RecyclerView recyclerView, int dx, int dy) {
+        //only scrolling towards the end loads more
+        if (dy <= 0 || recyclerView.getAdapter() == null
+                || !(recyclerView.getLayoutManager() instanceof LinearLayoutManager)) {
+            return;
+        }
+        int lastVisible = ((LinearLayoutManager) recyclerView.getLayoutManager()).findLastVisibleItemPosition();
+        if (lastVisible >= recyclerView.getAdapter().getItemCount() - 1 - thresholdRows) {
+            callback.onLoadMore();
+        }
+    }
+}
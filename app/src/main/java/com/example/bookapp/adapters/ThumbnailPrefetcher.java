@@ -0,0 +1,150 @@
+package com.example.bookapp.adapters;
+
+import android.graphics.drawable.Drawable;
+import android.os.SystemClock;
+import android.util.Log;
+import android.util.LruCache;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.recyclerview.widget.LinearLayoutManager;
+import androidx.recyclerview.widget.RecyclerView;
+
+import com.bumptech.glide.Glide;
+import com.bumptech.glide.load.DataSource;
+import com.bumptech.glide.load.engine.GlideException;
+import com.bumptech.glide.request.RequestListener;
+import com.bumptech.glide.request.target.Target;
+import com.example.bookapp.MyApplication;
+import com.example.bookapp.models.ModelPdf;
+
+/*Warms thumbnail/cover cache for the rows user is scrolling towards
+* - looks at scroll direction and speed, nothing is prefetched during a fast fling
+* - prefetch only starts while fewer than maxConcurrent thumbnail loads and cover preloads run, so visible rows go first
+* - remembers only the last MAX_REMEMBERED books it prefetched, older ones may be prefetched again*/
+public class ThumbnailPrefetcher extends RecyclerView.OnScrollListener {
+
+    private static final String TAG = "PREFETCH_TAG";
+
+    private static final int MAX_REMEMBERED = 100;
+
+    //adapters of book lists implement it, so prefetcher can see books of rows not yet bound
+    public interface BookSource {
+        int getItemCount();
+
+        ModelPdf getBook(int position);
+    }
+
+    //number of rows ahead of the visible ones to prefetch
+    private final int prefetchRows;
+    //max thumbnail loads (visible or prefetch) and cover preloads running at once, before prefetch waits
+    private final int maxConcurrent;
+    //scroll speed in px per second above which user flies past rows
+    private final float flingVelocityPx;
+
+    //last scroll direction, 1 down, -1 up
+    private int direction = 1;
+    private float velocityPx = 0;
+    private long lastScrollTime = 0;
+
+    //books already prefetched or being prefetched, values unused
+    private final LruCache<String, Boolean> prefetched = new LruCache<>(MAX_REMEMBERED);
+    //cover preloads started by this prefetcher and not finished yet
+    private int coversInFlight = 0;
+
+    public ThumbnailPrefetcher(RecyclerView recyclerView, int prefetchRows, int maxConcurrent, int flingVelocityDp) {
+        this.prefetchRows = prefetchRows;
+        this.maxConcurrent = maxConcurrent;
+        this.flingVelocityPx = flingVelocityDp * recyclerView.getResources().getDisplayMetrics().density;
+    }
+
+    @Override
+    public void onScrolled(@NonNull RecyclerView recyclerView, int dx, int dy) {
+        long now = SystemClock.uptimeMillis();
+        long elapsed = now - lastScrollTime;
+        lastScrollTime = now;
+        if (dy != 0) {
+            direction = dy > 0 ? 1 : -1;
+        }
+        //frames a long time apart are the start of a new scroll, not a speed
+        velocityPx = (elapsed > 0 && elapsed < 100) ? Math.abs(dy) * 1000f / elapsed : 0;
+
+        if (recyclerView.getScrollState() == RecyclerView.SCROLL_STATE_SETTLING && velocityPx > flingVelocityPx) {
+            //flinging, rows ahead will fly past, don't spend bandwidth on them
+            return;
+        }
+        prefetch(recyclerView);
+    }
+
+    @Override
+    public void onScrollStateChanged(@NonNull RecyclerView recyclerView, int newState) {
+        if (newState == RecyclerView.SCROLL_STATE_IDLE) {
+            //fling ended, user looks at these rows now
+            velocityPx = 0;
+            prefetch(recyclerView);
+        }
+    }
+
+    private void prefetch(RecyclerView recyclerView) {
+        if (!(recyclerView.getAdapter() instanceof BookSource)
+                || !(recyclerView.getLayoutManager() instanceof LinearLayoutManager)) {
+            return;
+        }
+        BookSource source = (BookSource) recyclerView.getAdapter();
+        LinearLayoutManager layoutManager = (LinearLayoutManager) recyclerView.getLayoutManager();
+
+        int first = layoutManager.findFirstVisibleItemPosition();
+        int last = layoutManager.findLastVisibleItemPosition();
+        if (first == RecyclerView.NO_POSITION) {
+            return;
+        }
+
+        //rows ahead in scroll direction, nearest first
+        for (int i = 1; i <= prefetchRows; i++) {
+            int position = direction > 0 ? last + i : first - i;
+            if (position < 0 || position >= source.getItemCount()) {
+                break;
+            }
+            if (MyApplication.getThumbnailRequests().getInFlightCount() + coversInFlight >= maxConcurrent) {
+                //visible rows or earlier prefetches use the link, try again on next scroll
+                break;
+            }
+            prefetchBook(recyclerView, source.getBook(position));
+        }
+    }
+
+    private void prefetchBook(RecyclerView recyclerView, ModelPdf model) {
+        //records without a pdf url have nothing to prefetch
+        if (model == null || model.getId() == null || model.getUrl() == null || prefetched.get(model.getId()) != null) {
+            return;
+        }
+        prefetched.put(model.getId(), true);
+
+        String coverUrl = model.getCoverUrl();
+        if (coverUrl != null && !coverUrl.isEmpty() && !coverUrl.equals("null")) {
+            //books with cover, glide keeps it in its own cache
+            Log.d(TAG, "prefetchBook: cover of " + model.getTitle());
+            coversInFlight++;
+            Glide.with(recyclerView)
+                    .load(coverUrl)
+                    .listener(new RequestListener<Drawable>() {
+                        @Override
+                        public boolean onLoadFailed(@Nullable GlideException e, Object coverModel, Target<Drawable> target, boolean isFirstResource) {
+                            coversInFlight--;
+                            return false;
+                        }
+
+                        @Override
+                        public boolean onResourceReady(Drawable resource, Object coverModel, Target<Drawable> target, DataSource dataSource, boolean isFirstResource) {
+                            coversInFlight--;
+                            return false;
+                        }
+                    })
+                    .preload();
+            return;
+        }
+
+        Log.d(TAG, "prefetchBook: thumbnail of " + model.getTitle());
+        MyApplication.prefetchPdfThumbnail(model.getId(), model.getUrl(), "" + model.getTitle());
+    }
+}
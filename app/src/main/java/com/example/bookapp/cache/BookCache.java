@@ -0,0 +1,153 @@
+package com.example.bookapp.cache;
+
+import android.os.SystemClock;
+import android.util.Log;
+import android.util.LruCache;
+
+import androidx.annotation.NonNull;
+
+import com.example.bookapp.models.ModelPdf;
+import com.google.firebase.database.DataSnapshot;
+import com.google.firebase.database.DatabaseError;
+import com.google.firebase.database.DatabaseReference;
+import com.google.firebase.database.FirebaseDatabase;
+import com.google.firebase.database.ValueEventListener;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/*Books records by id, for screens that only know ids, e.g. favorites
+* - getAll() loads a set of ids at once: cached ones from memory, missing ones read in parallel
+* - reads of an id already loading are shared, with rows or another getAll()
+* - book lists put what they read, edits and deletes invalidate
+* - least recently used books are dropped above maxBooks
+* - only touched on main thread, firebase callbacks are delivered there*/
+public class BookCache {
+
+    private static final String TAG = "BOOK_CACHE_TAG";
+
+    private static BookCache instance;
+
+    public interface Callback {
+        //books in order of the requested ids, ids without a Books record are left out
+        void onBooks(List<ModelPdf> books);
+    }
+
+    private final LruCache<String, ModelPdf> books;
+    private final RequestCoalescer<ModelPdf> requests = new RequestCoalescer<>("book");
+
+    private final DatabaseReference ref = FirebaseDatabase.getInstance().getReference("Books");
+
+    private BookCache(int maxBooks) {
+        books = new LruCache<>(maxBooks);
+    }
+
+    public static synchronized void init(int maxBooks) {
+        if (instance == null) {
+            instance = new BookCache(maxBooks);
+        }
+    }
+
+    public static BookCache getInstance() {
+        return instance;
+    }
+
+    public void put(ModelPdf book) {
+        if (book != null && book.getId() != null) {
+            books.put(book.getId(), book);
+        }
+    }
+
+    //book was edited or deleted, next lookup reads it again
+    public void invalidate(String bookId) {
+        books.remove(bookId);
+    }
+
+    public void getAll(List<String> bookIds, Callback callback) {
+        long startTime = SystemClock.elapsedRealtime();
+        ModelPdf[] results = new ModelPdf[bookIds.size()];
+        int[] pending = {0};
+        int hits = 0;
+
+        ArrayList<Integer> missing = new ArrayList<>();
+        for (int i = 0; i < bookIds.size(); i++) {
+            ModelPdf book = books.get(bookIds.get(i));
+            if (book != null) {
+                results[i] = book;
+                hits++;
+            } else {
+                missing.add(i);
+            }
+        }
+        int cacheHits = hits;
+        pending[0] = missing.size();
+        if (missing.isEmpty()) {
+            deliver(results, callback, cacheHits, startTime);
+            return;
+        }
+
+        //all reads are sent right away, firebase pipelines them over one connection
+        for (int index : missing) {
+            String bookId = bookIds.get(index);
+            requests.request(bookId, new RequestCoalescer.Loader<ModelPdf>() {
+                @Override
+                public Runnable load(String key, RequestCoalescer.Callback<ModelPdf> done) {
+                    return read(key, done);
+                }
+            }, new RequestCoalescer.Callback<ModelPdf>() {
+                @Override
+                public void onResult(ModelPdf book) {
+                    results[index] = book;
+                    if (--pending[0] == 0) {
+                        deliver(results, callback, cacheHits, startTime);
+                    }
+                }
+
+                @Override
+                public void onFailure(Exception e) {
+                    //rest of the list is still shown
+                    Log.d(TAG, "onFailure: failed to load book " + bookId + " due to " + e.getMessage());
+                    if (--pending[0] == 0) {
+                        deliver(results, callback, cacheHits, startTime);
+                    }
+                }
+            });
+        }
+    }
+
+    private void deliver(ModelPdf[] results, Callback callback, int cacheHits, long startTime) {
+        ArrayList<ModelPdf> found = new ArrayList<>();
+        for (ModelPdf book : results) {
+            if (book != null) {
+                found.add(book);
+            }
+        }
+        Log.d(TAG, "getAll: " + found.size() + " of " + results.length + " books, " + cacheHits + " from cache, in "
+                + (SystemClock.elapsedRealtime() - startTime) + " ms");
+        callback.onBooks(found);
+    }
+
+    private Runnable read(String bookId, RequestCoalescer.Callback<ModelPdf> done) {
+        ValueEventListener listener = new ValueEventListener() {
+            @Override
+            public void onDataChange(@NonNull DataSnapshot snapshot) {
+                //deleted book, its id may still be in someone's favorites
+                ModelPdf book = snapshot.exists() ? snapshot.getValue(ModelPdf.class) : null;
+                put(book);
+                done.onResult(book);
+            }
+
+            @Override
+            public void onCancelled(@NonNull DatabaseError error) {
+                done.onFailure(error.toException());
+            }
+        };
+        ref.child(bookId).addListenerForSingleValueEvent(listener);
+        return new Runnable() {
+            @Override
+            public void run() {
+                ref.child(bookId).removeEventListener(listener);
+            }
+        };
+    }
+}
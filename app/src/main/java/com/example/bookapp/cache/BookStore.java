@@ -0,0 +1,342 @@
+package com.example.bookapp.cache;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.util.Base64;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+
+import com.example.bookapp.MyApplication;
+import com.google.android.gms.tasks.OnFailureListener;
+import com.google.android.gms.tasks.OnSuccessListener;
+import com.google.firebase.storage.FileDownloadTask;
+import com.google.firebase.storage.FirebaseStorage;
+import com.google.firebase.storage.StorageMetadata;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/*Content addressed local copies of books, shared by reader, thumbnails and downloads
+* - files are named by md5 of their content, so same pdf under two urls is stored once
+* - url -> content hash index is persisted, so known urls don't need a metadata round trip
+* - concurrent fetches of same url share one metadata lookup, fetches of same content share one download
+* - total size is kept under a disk quota by evicting least recently used books*/
+public class BookStore {
+
+    private static final String TAG = "BOOK_STORE_TAG";
+
+    private static BookStore instance;
+
+    private final File booksDir;
+    private final long maxBytes;
+
+    //url -> content hash (hex md5)
+    private final SharedPreferences index;
+
+    //url -> callbacks waiting for that url, only touched on main thread
+    private final HashMap<String, ArrayList<MyApplication.DownloadCallback>> waiters = new HashMap<>();
+    //content hash -> urls waiting for the running download of that content, two urls never write one .part file
+    private final HashMap<String, ArrayList<String>> hashUrls = new HashMap<>();
+    //content hash -> running download of that content
+    private final HashMap<String, FileDownloadTask> downloads = new HashMap<>();
+    //url -> content hash it waits for
+    private final HashMap<String, String> urlHashes = new HashMap<>();
+
+    //number of downloads started and of fetches that joined one already running
+    private long issuedCount = 0;
+    private long dedupedCount = 0;
+
+    //size accounting and eviction run off main thread
+    private final ExecutorService executor = Executors.newSingleThreadExecutor();
+    private long storeBytes = 0;
+
+    private BookStore(Context context, long maxBytes) {
+        this.maxBytes = maxBytes;
+        booksDir = new File(context.getCacheDir(), "books");
+        booksDir.mkdirs();
+        index = context.getSharedPreferences("book_store_index", Context.MODE_PRIVATE);
+
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                computeStoreBytes();
+                evict(null);
+            }
+        });
+    }
+
+    public static synchronized void init(Context context, long maxBytes) {
+        if (instance == null) {
+            instance = new BookStore(context.getApplicationContext(), maxBytes);
+        }
+    }
+
+    public static BookStore getInstance() {
+        return instance;
+    }
+
+    //local copy of a book if it is in the store, null otherwise
+    public File getIfPresent(String pdfUrl) {
+        String hash = index.getString(pdfUrl, null);
+        if (hash == null) {
+            return null;
+        }
+        File file = fileForHash(hash);
+        return file.exists() ? file : null;
+    }
+
+    //callback is always called on main thread
+    public void fetch(String pdfUrl, MyApplication.DownloadCallback callback) {
+        File local = getIfPresent(pdfUrl);
+        if (local != null) {
+            Log.d(TAG, "fetch: local copy " + local.getName() + ", " + local.length() + " bytes");
+            //touch, evicting least recently used first
+            local.setLastModified(System.currentTimeMillis());
+            callback.onDownloaded(local);
+            return;
+        }
+
+        ArrayList<MyApplication.DownloadCallback> urlWaiters = waiters.get(pdfUrl);
+        if (urlWaiters != null) {
+            //same book is already being fetched, wait for it instead of fetching again
+            urlWaiters.add(callback);
+            dedupedCount++;
+            Log.d(TAG, "fetch: joining running fetch of " + pdfUrl + ", deduplicated " + dedupedCount + " of " + (issuedCount + dedupedCount));
+            return;
+        }
+
+        urlWaiters = new ArrayList<>();
+        urlWaiters.add(callback);
+        waiters.put(pdfUrl, urlWaiters);
+        issuedCount++;
+        resolveHashAndDownload(pdfUrl, urlWaiters);
+    }
+
+    //callback is no longer interested, download is cancelled if nobody else waits for it
+    public void cancel(String pdfUrl, MyApplication.DownloadCallback callback) {
+        ArrayList<MyApplication.DownloadCallback> urlWaiters = waiters.get(pdfUrl);
+        if (urlWaiters == null) {
+            return;
+        }
+        urlWaiters.remove(callback);
+        if (urlWaiters.isEmpty()) {
+            waiters.remove(pdfUrl);
+            String hash = urlHashes.remove(pdfUrl);
+            ArrayList<String> urls = hash == null ? null : hashUrls.get(hash);
+            if (urls == null) {
+                return;
+            }
+            urls.remove(pdfUrl);
+            if (urls.isEmpty()) {
+                hashUrls.remove(hash);
+                FileDownloadTask downloadTask = downloads.remove(hash);
+                if (downloadTask != null && downloadTask.isInProgress()) {
+                    Log.d(TAG, "cancel: no one waits for " + hash + ", cancelling download");
+                    downloadTask.cancel();
+                }
+            }
+        }
+    }
+
+    public long getIssuedCount() {
+        return issuedCount;
+    }
+
+    public long getDedupedCount() {
+        return dedupedCount;
+    }
+
+    private void resolveHashAndDownload(String pdfUrl, ArrayList<MyApplication.DownloadCallback> urlWaiters) {
+        //Step 1: get content hash of the book from its metadata
+        FirebaseStorage.getInstance().getReferenceFromUrl(pdfUrl)
+                .getMetadata()
+                .addOnSuccessListener(new OnSuccessListener<StorageMetadata>() {
+                    @Override
+                    public void onSuccess(StorageMetadata storageMetadata) {
+                        if (waiters.get(pdfUrl) != urlWaiters) {
+                            //cancelled meanwhile
+                            return;
+                        }
+                        String hash = hexHash(storageMetadata.getMd5Hash(), pdfUrl);
+                        File file = fileForHash(hash);
+                        if (file.exists()) {
+                            //same content already stored under another url
+                            Log.d(TAG, "onSuccess: content of " + pdfUrl + " already stored as " + file.getName());
+                            index.edit().putString(pdfUrl, hash).apply();
+                            file.setLastModified(System.currentTimeMillis());
+                            deliver(pdfUrl, urlWaiters, file, null);
+                        } else if (hashUrls.containsKey(hash)) {
+                            //same content is already being downloaded for another url, wait for that download
+                            hashUrls.get(hash).add(pdfUrl);
+                            urlHashes.put(pdfUrl, hash);
+                            dedupedCount++;
+                            Log.d(TAG, "onSuccess: content of " + pdfUrl + " is already being downloaded as " + hash);
+                        } else {
+                            download(pdfUrl, hash, file);
+                        }
+                    }
+                })
+                .addOnFailureListener(new OnFailureListener() {
+                    @Override
+                    public void onFailure(@NonNull Exception e) {
+                        Log.d(TAG, "onFailure: failed to get metadata of " + pdfUrl + " due to " + e.getMessage());
+                        deliver(pdfUrl, urlWaiters, null, e);
+                    }
+                });
+    }
+
+    private void download(String pdfUrl, String hash, File file) {
+        //Step 2: stream the book into its content addressed file
+        ArrayList<String> urls = new ArrayList<>();
+        urls.add(pdfUrl);
+        hashUrls.put(hash, urls);
+        urlHashes.put(pdfUrl, hash);
+        FileDownloadTask downloadTask = MyApplication.downloadPdfToFile(pdfUrl, file, new MyApplication.DownloadCallback() {
+            @Override
+            public void onProgress(long bytesTransferred, long totalBytes) {
+                if (hashUrls.get(hash) != urls) {
+                    return;
+                }
+                for (String url : new ArrayList<>(urls)) {
+                    ArrayList<MyApplication.DownloadCallback> urlWaiters = waiters.get(url);
+                    if (urlWaiters == null) {
+                        continue;
+                    }
+                    for (MyApplication.DownloadCallback waiter : new ArrayList<>(urlWaiters)) {
+                        waiter.onProgress(bytesTransferred, totalBytes);
+                    }
+                }
+            }
+
+            @Override
+            public void onDownloaded(File file) {
+                Log.d(TAG, "onDownloaded: stored " + pdfUrl + " as " + file.getName() + ", " + file.length() + " bytes");
+                SharedPreferences.Editor editor = index.edit();
+                for (String url : urls) {
+                    editor.putString(url, hash);
+                }
+                editor.apply();
+                long fileBytes = file.length();
+                executor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        addStoreBytes(fileBytes);
+                        evict(file);
+                    }
+                });
+                deliverHash(hash, urls, file, null);
+            }
+
+            @Override
+            public void onFailure(Exception e) {
+                deliverHash(hash, urls, null, e);
+            }
+        });
+        downloads.put(hash, downloadTask);
+    }
+
+    private void deliverHash(String hash, ArrayList<String> urls, File file, Exception e) {
+        //a cancelled download may complete after a new download of same content started, leave that one alone
+        if (hashUrls.get(hash) != urls) {
+            return;
+        }
+        hashUrls.remove(hash);
+        downloads.remove(hash);
+        for (String url : urls) {
+            urlHashes.remove(url);
+            deliver(url, waiters.get(url), file, e);
+        }
+    }
+
+    private void deliver(String pdfUrl, ArrayList<MyApplication.DownloadCallback> urlWaiters, File file, Exception e) {
+        //a cancelled fetch may complete after a new fetch of same url started, leave that one alone
+        if (urlWaiters == null || waiters.get(pdfUrl) != urlWaiters) {
+            return;
+        }
+        waiters.remove(pdfUrl);
+        for (MyApplication.DownloadCallback waiter : urlWaiters) {
+            if (file != null) {
+                waiter.onDownloaded(file);
+            } else {
+                waiter.onFailure(e);
+            }
+        }
+    }
+
+    private File fileForHash(String hash) {
+        return new File(booksDir, hash + ".pdf");
+    }
+
+    private static String hexHash(String base64Md5, String pdfUrl) {
+        if (base64Md5 == null) {
+            //no hash in metadata, fall back to addressing by url
+            return "url_" + Keys.md5(pdfUrl);
+        }
+        byte[] md5 = Base64.decode(base64Md5, Base64.DEFAULT);
+        StringBuilder sb = new StringBuilder();
+        for (byte b : md5) {
+            sb.append(String.format("%02x", b));
+        }
+        return sb.toString();
+    }
+
+    /*---Size accounting and eviction---*/
+    public synchronized long getStoreBytes() {
+        return storeBytes;
+    }
+
+    private synchronized void computeStoreBytes() {
+        storeBytes = 0;
+        File[] files = booksDir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                //downloads still running are not in the store yet, evict() skips them too
+                if (!file.getName().endsWith(".part")) {
+                    storeBytes += file.length();
+                }
+            }
+        }
+        Log.d(TAG, "computeStoreBytes: " + storeBytes + " bytes of " + maxBytes);
+    }
+
+    private synchronized void addStoreBytes(long bytes) {
+        storeBytes += bytes;
+    }
+
+    //delete least recently used books until store fits in quota, keep is never deleted
+    private synchronized void evict(File keep) {
+        if (storeBytes <= maxBytes) {
+            return;
+        }
+        File[] files = booksDir.listFiles();
+        if (files == null) {
+            return;
+        }
+        Arrays.sort(files, new Comparator<File>() {
+            @Override
+            public int compare(File f1, File f2) {
+                return Long.compare(f1.lastModified(), f2.lastModified());
+            }
+        });
+        for (File file : files) {
+            if (storeBytes <= maxBytes) {
+                break;
+            }
+            //skip the just stored book and downloads still running
+            if (file.equals(keep) || file.getName().endsWith(".part")) {
+                continue;
+            }
+            long fileBytes = file.length();
+            if (file.delete()) {
+                storeBytes -= fileBytes;
+                Log.d(TAG, "evict: evicted " + file.getName() + ", " + storeBytes + " bytes left");
+            }
+        }
+    }
+}
@@ -0,0 +1,106 @@
+package com.example.bookapp.cache;
+
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+
+import com.google.firebase.database.DataSnapshot;
+import com.google.firebase.database.DatabaseError;
+import com.google.firebase.database.DatabaseReference;
+import com.google.firebase.database.FirebaseDatabase;
+import com.google.firebase.database.ValueEventListener;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+
+/*Process wide dictionary of category id -> category name
+* - fed by one listener on Categories, so it stays current when admins add or edit categories
+* - rows resolve names from memory instead of reading Categories/<id> each
+* - only touched on main thread, firebase callbacks are delivered there*/
+public class CategoryCache {
+
+    private static final String TAG = "CATEGORY_CACHE_TAG";
+
+    private static CategoryCache instance;
+
+    public interface Callback {
+        //name is null for an unknown category
+        void onName(String name);
+    }
+
+    private final HashMap<String, String> names = new HashMap<>();
+    private boolean loaded = false;
+
+    //requests made before first snapshot arrived, category id -> callbacks
+    private final HashMap<String, ArrayList<Callback>> waiters = new HashMap<>();
+
+    private final DatabaseReference ref = FirebaseDatabase.getInstance().getReference("Categories");
+    private ValueEventListener listener;
+
+    public static CategoryCache getInstance() {
+        if (instance == null) {
+            instance = new CategoryCache();
+        }
+        return instance;
+    }
+
+    //callback runs right away once names are loaded, otherwise when they arrive
+    public void get(String categoryId, Callback callback) {
+        if (loaded) {
+            callback.onName(names.get(categoryId));
+            return;
+        }
+        ArrayList<Callback> idWaiters = waiters.get(categoryId);
+        if (idWaiters == null) {
+            idWaiters = new ArrayList<>();
+            waiters.put(categoryId, idWaiters);
+        }
+        idWaiters.add(callback);
+        attach();
+    }
+
+    public void cancel(String categoryId, Callback callback) {
+        ArrayList<Callback> idWaiters = waiters.get(categoryId);
+        if (idWaiters != null) {
+            idWaiters.remove(callback);
+            if (idWaiters.isEmpty()) {
+                waiters.remove(categoryId);
+            }
+        }
+    }
+
+    private void attach() {
+        if (listener != null) {
+            return;
+        }
+        listener = new ValueEventListener() {
+            @Override
+            public void onDataChange(@NonNull DataSnapshot snapshot) {
+                //whole node is small, rebuild on every change
+                names.clear();
+                for (DataSnapshot ds : snapshot.getChildren()) {
+                    names.put(ds.getKey(), "" + ds.child("category").getValue());
+                }
+                loaded = true;
+                Log.d(TAG, "onDataChange: " + names.size() + " categories");
+
+                HashMap<String, ArrayList<Callback>> ready = new HashMap<>(waiters);
+                waiters.clear();
+                for (String categoryId : ready.keySet()) {
+                    for (Callback callback : ready.get(categoryId)) {
+                        callback.onName(names.get(categoryId));
+                    }
+                }
+            }
+
+            @Override
+            public void onCancelled(@NonNull DatabaseError error) {
+                //e.g. read denied before sign in, listen again on next request
+                Log.d(TAG, "onCancelled: " + error.getMessage());
+                ref.removeEventListener(this);
+                listener = null;
+            }
+        };
+        ref.addValueEventListener(listener);
+    }
+}
@@ -0,0 +1,22 @@
+package com.example.bookapp.cache;
+
+import java.security.MessageDigest;
+
+//file name safe keys for the on-disk caches
+class Keys {
+
+    static String md5(String value) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("MD5");
+            byte[] hash = digest.digest(value.getBytes("UTF-8"));
+            StringBuilder sb = new StringBuilder();
+            for (byte b : hash) {
+                sb.append(String.format("%02x", b));
+            }
+            return sb.toString();
+        } catch (Exception e) {
+            //md5 is always available, fallback only to keep the key valid as file name
+            return "" + value.hashCode();
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package com.example.bookapp.cache;
+
+import android.content.ComponentCallbacks2;
+import android.content.Context;
+import android.util.DisplayMetrics;
+import android.util.Log;
+
+import com.github.barteksc.pdfviewer.util.Constants;
+
+/*Sizes the page render cache of the reader
+* PDFView renders pages as square parts on a background thread and keeps them in an LRU of parts
+* - preload area is widened to one screen, so previous and next pages are rendered before user swipes to them
+* - LRU holds current and adjacent pages at screen resolution, within a memory budget
+* - LRU shrinks to current page on memory pressure and grows back when reader is shown again
+* - both are static settings of the pdf library, shared by every PDFView of the process e.g. the preview on the
+*   detail screen; they are only changed while a reader is shown, the library's own values are put back when the
+*   last shown reader is stopped*/
+public class ReaderPageCache {
+
+    private static final String TAG = "READER_CACHE_TAG";
+
+    //PDFView renders without bestQuality, parts are RGB_565
+    private static final int BYTES_PER_PIXEL = 2;
+
+    //parts of one page at screen resolution, and LRU size and preload offset for the pages we keep
+    private static int partsPerPage = 0;
+    private static int fullCacheSize = Constants.Cache.CACHE_SIZE;
+    private static int preloadOffset = Constants.PRELOAD_OFFSET;
+
+    //readers started and not stopped, e.g. two while one opens over another; values the library had before them
+    private static int shownReaders = 0;
+    private static int libraryCacheSize;
+    private static int libraryPreloadOffset;
+
+    //call before PDFView is created, settings are applied by show()
+    public static void configure(Context context, int cachedPages, long maxBytes) {
+        DisplayMetrics metrics = context.getResources().getDisplayMetrics();
+        int partSize = (int) Constants.PART_SIZE;
+        int partsAcross = (metrics.widthPixels + partSize - 1) / partSize;
+        int partsDown = (metrics.heightPixels + partSize - 1) / partSize;
+        partsPerPage = partsAcross * partsDown;
+
+        //previous, current and next page, but never more than memory budget allows
+        long partBytes = (long) partSize * partSize * BYTES_PER_PIXEL;
+        int budgetParts = (int) (maxBytes / partBytes);
+        fullCacheSize = Math.max(partsPerPage, Math.min(partsPerPage * cachedPages, budgetParts));
+
+        //preload offset is in dp, one screen width reaches into the adjacent pages of a horizontal swipe
+        preloadOffset = (int) (metrics.widthPixels / metrics.density);
+        Log.d(TAG, "configure: " + partsPerPage + " parts per page, cache " + fullCacheSize + " parts, " + (fullCacheSize * partBytes) + " bytes, preload " + preloadOffset + " dp");
+    }
+
+    //call from onStart of the reader, preload area is read when a document loads
+    //also brings the cache back to full size after a trim
+    public static void show() {
+        if (shownReaders++ == 0) {
+            libraryCacheSize = Constants.Cache.CACHE_SIZE;
+            libraryPreloadOffset = Constants.PRELOAD_OFFSET;
+        }
+        Constants.Cache.CACHE_SIZE = fullCacheSize;
+        Constants.PRELOAD_OFFSET = preloadOffset;
+        Log.d(TAG, "show: cache " + fullCacheSize + " parts, preload " + preloadOffset + " dp");
+    }
+
+    //call from onStop of the reader, other PDFViews get the library's values back
+    public static void hide() {
+        if (shownReaders == 0) {
+            return;
+        }
+        if (--shownReaders == 0) {
+            Constants.Cache.CACHE_SIZE = libraryCacheSize;
+            Constants.PRELOAD_OFFSET = libraryPreloadOffset;
+            Log.d(TAG, "hide: cache back to " + libraryCacheSize + " parts, preload " + libraryPreloadOffset + " dp");
+        }
+    }
+
+    //call from onTrimMemory, PDFView evicts parts above the new size as it caches the next ones
+    public static void trim(int level) {
+        if (partsPerPage == 0 || shownReaders == 0) {
+            //settings of no reader are in place, the library's own are left alone
+            return;
+        }
+        //running low, critical, ui hidden and background levels are all above running low
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW) {
+            //keep only the page on screen, adjacent ones are rendered again on swipe
+            Constants.Cache.CACHE_SIZE = partsPerPage;
+            Log.d(TAG, "trim: level " + level + ", cache down to " + partsPerPage + " parts");
+        }
+    }
+}
@@ -0,0 +1,121 @@
+package com.example.bookapp.cache;
+
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+
+/*Single flight for async loads: concurrent requests with same key share one load and its result
+* only used on main thread, firebase callbacks are delivered there*/
+public class RequestCoalescer<T> {
+
+    private static final String TAG = "COALESCER_TAG";
+
+    public interface Callback<T> {
+        void onResult(T result);
+
+        void onFailure(Exception e);
+    }
+
+    public interface Loader<T> {
+        //start loading key, done must be called exactly once
+        //returns a runnable that stops the load when nobody waits for it anymore, or null if it can't be stopped
+        Runnable load(String key, Callback<T> done);
+    }
+
+    //name in logs, e.g. metadata
+    private final String name;
+
+    //key -> callbacks waiting for that key
+    private final HashMap<String, ArrayList<Callback<T>>> inFlight = new HashMap<>();
+    //key -> stopper of the running load of that key
+    private final HashMap<String, Runnable> cancellers = new HashMap<>();
+
+    //number of loads actually started, of requests that joined one already running and of loads nobody waited for anymore
+    private long issuedCount = 0;
+    private long dedupedCount = 0;
+    private long cancelledCount = 0;
+
+    public RequestCoalescer(String name) {
+        this.name = name;
+    }
+
+    public void request(String key, Loader<T> loader, Callback<T> callback) {
+        ArrayList<Callback<T>> waiters = inFlight.get(key);
+        if (waiters != null) {
+            //same load is already running, wait for its result
+            waiters.add(callback);
+            dedupedCount++;
+            Log.d(TAG, name + ": joined running load, deduplicated " + dedupedCount + " of " + (issuedCount + dedupedCount));
+            return;
+        }
+
+        ArrayList<Callback<T>> keyWaiters = new ArrayList<>();
+        keyWaiters.add(callback);
+        inFlight.put(key, keyWaiters);
+        issuedCount++;
+
+        Runnable canceller = loader.load(key, new Callback<T>() {
+            @Override
+            public void onResult(T result) {
+                for (Callback<T> waiter : finish(key, keyWaiters)) {
+                    waiter.onResult(result);
+                }
+            }
+
+            @Override
+            public void onFailure(Exception e) {
+                for (Callback<T> waiter : finish(key, keyWaiters)) {
+                    waiter.onFailure(e);
+                }
+            }
+        });
+        //load may have completed synchronously
+        if (canceller != null && inFlight.get(key) == keyWaiters) {
+            cancellers.put(key, canceller);
+        }
+    }
+
+    //callback is no longer interested, load is stopped if nobody else waits for it
+    public void cancel(String key, Callback<T> callback) {
+        ArrayList<Callback<T>> waiters = inFlight.get(key);
+        if (waiters == null || !waiters.remove(callback)) {
+            return;
+        }
+        if (waiters.isEmpty()) {
+            inFlight.remove(key);
+            cancelledCount++;
+            Runnable canceller = cancellers.remove(key);
+            if (canceller != null) {
+                canceller.run();
+            }
+            Log.d(TAG, name + ": nobody waits for " + key + ", cancelled " + cancelledCount + " loads");
+        }
+    }
+
+    private ArrayList<Callback<T>> finish(String key, ArrayList<Callback<T>> keyWaiters) {
+        //load of a key cancelled earlier may complete after a new load of same key started, leave that one alone
+        if (inFlight.get(key) == keyWaiters) {
+            inFlight.remove(key);
+            cancellers.remove(key);
+        }
+        return keyWaiters;
+    }
+
+    //number of distinct loads running now
+    public int getInFlightCount() {
+        return inFlight.size();
+    }
+
+    public long getIssuedCount() {
+        return issuedCount;
+    }
+
+    public long getDedupedCount() {
+        return dedupedCount;
+    }
+
+    public long getCancelledCount() {
+        return cancelledCount;
+    }
+}
@@ -0,0 +1,237 @@
+package com.example.bookapp.cache;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Color;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.ParcelFileDescriptor;
+import android.util.Log;
+import android.util.LruCache;
+
+import com.shockwave.pdfium.PdfDocument;
+import com.shockwave.pdfium.PdfiumCore;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/*Two level (memory + disk) LRU cache of rendered first pages of books, used by the book rows*/
+public class ThumbnailCache {
+
+    private static final String TAG = "THUMBNAIL_CACHE_TAG";
+
+    private static ThumbnailCache instance;
+
+    //first level, decoded bitmaps sized by their byte count
+    private final LruCache<String, Bitmap> memoryCache;
+
+    //second level, jpeg files in cache dir, access ordered so first entry is least recently used
+    private final File diskDir;
+    private final long maxDiskBytes;
+    private final LinkedHashMap<String, File> diskEntries = new LinkedHashMap<>(64, 0.75f, true);
+    private long diskBytes = 0;
+
+    //render/disk work never runs on main thread, results are posted back to it
+    private final ExecutorService executor = Executors.newFixedThreadPool(2);
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    private final PdfiumCore pdfiumCore;
+    private final int thumbnailWidthPx;
+
+    public interface Callback {
+        //called on main thread, bitmap is null on cache miss or render failure
+        void onResult(Bitmap bitmap);
+    }
+
+    private ThumbnailCache(Context context, int maxMemoryBytes, long maxDiskBytes, int thumbnailWidthPx) {
+        this.maxDiskBytes = maxDiskBytes;
+        this.thumbnailWidthPx = thumbnailWidthPx;
+        this.pdfiumCore = new PdfiumCore(context);
+
+        memoryCache = new LruCache<String, Bitmap>(maxMemoryBytes) {
+            @Override
+            protected int sizeOf(String key, Bitmap bitmap) {
+                return bitmap.getByteCount();
+            }
+        };
+
+        diskDir = new File(context.getCacheDir(), "thumbnails");
+        diskDir.mkdirs();
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                loadDiskIndex();
+            }
+        });
+    }
+
+    public static synchronized void init(Context context, int maxMemoryBytes, long maxDiskBytes, int thumbnailWidthPx) {
+        if (instance == null) {
+            instance = new ThumbnailCache(context.getApplicationContext(), maxMemoryBytes, maxDiskBytes, thumbnailWidthPx);
+        }
+    }
+
+    public static ThumbnailCache getInstance() {
+        return instance;
+    }
+
+    //key of a thumbnail, url is part of it so a replaced pdf gets a new thumbnail
+    public static String keyFor(String bookId, String pdfUrl) {
+        return Keys.md5(bookId + "|" + pdfUrl);
+    }
+
+    public Bitmap getFromMemory(String key) {
+        return memoryCache.get(key);
+    }
+
+    public void get(String key, Callback callback) {
+        Bitmap bitmap = memoryCache.get(key);
+        if (bitmap != null) {
+            callback.onResult(bitmap);
+            return;
+        }
+
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                Bitmap bitmap = readFromDisk(key);
+                if (bitmap != null) {
+                    memoryCache.put(key, bitmap);
+                }
+                postResult(callback, bitmap);
+            }
+        });
+    }
+
+    //render first page of a local pdf, store it in both levels and return it
+    public void renderAndPut(String key, File pdfFile, Callback callback) {
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                Bitmap bitmap = null;
+                ParcelFileDescriptor fd = null;
+                PdfDocument document = null;
+                try {
+                    long startTime = System.currentTimeMillis();
+                    fd = ParcelFileDescriptor.open(pdfFile, ParcelFileDescriptor.MODE_READ_ONLY);
+                    document = pdfiumCore.newDocument(fd);
+                    bitmap = renderFirstPage(document);
+                    Log.d(TAG, "renderAndPut: rendered " + key + " in " + (System.currentTimeMillis() - startTime) + " ms");
+
+                    memoryCache.put(key, bitmap);
+                    writeToDisk(key, bitmap);
+                } catch (Exception e) {
+                    Log.d(TAG, "renderAndPut: failed to render due to " + e.getMessage());
+                } finally {
+                    //closing the document also closes fd, fd alone is left when pdf is corrupt or encrypted
+                    try {
+                        if (document != null) {
+                            pdfiumCore.closeDocument(document);
+                        } else if (fd != null) {
+                            fd.close();
+                        }
+                    } catch (Exception e) {
+                        Log.d(TAG, "renderAndPut: failed to close pdf due to " + e.getMessage());
+                    }
+                }
+                postResult(callback, bitmap);
+            }
+        });
+    }
+
+    private Bitmap renderFirstPage(PdfDocument document) {
+        pdfiumCore.openPage(document, 0);
+        int pageWidth = pdfiumCore.getPageWidthPoint(document, 0);
+        int pageHeight = pdfiumCore.getPageHeightPoint(document, 0);
+
+        int width = thumbnailWidthPx;
+        int height = Math.max(1, (int) ((long) width * pageHeight / Math.max(1, pageWidth)));
+
+        Bitmap bitmap = Bitmap.createBitmap(width, height, Bitmap.Config.RGB_565);
+        bitmap.eraseColor(Color.WHITE);
+        pdfiumCore.renderPageBitmap(document, bitmap, 0, 0, 0, width, height);
+        return bitmap;
+    }
+
+    private void postResult(Callback callback, Bitmap bitmap) {
+        if (callback == null) {
+            return;
+        }
+        mainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                callback.onResult(bitmap);
+            }
+        });
+    }
+
+    /*---Disk level---*/
+    private synchronized void loadDiskIndex() {
+        File[] files = diskDir.listFiles();
+        if (files == null) {
+            return;
+        }
+        //oldest first, so the access ordered map starts with least recently used
+        Arrays.sort(files, new Comparator<File>() {
+            @Override
+            public int compare(File f1, File f2) {
+                return Long.compare(f1.lastModified(), f2.lastModified());
+            }
+        });
+        for (File file : files) {
+            diskEntries.put(file.getName(), file);
+            diskBytes += file.length();
+        }
+        Log.d(TAG, "loadDiskIndex: " + diskEntries.size() + " thumbnails, " + diskBytes + " bytes");
+        trimDisk();
+    }
+
+    private synchronized Bitmap readFromDisk(String key) {
+        File file = diskEntries.get(key);
+        if (file == null || !file.exists()) {
+            return null;
+        }
+        //touch, so lru order survives restart
+        file.setLastModified(System.currentTimeMillis());
+        return BitmapFactory.decodeFile(file.getPath());
+    }
+
+    private synchronized void writeToDisk(String key, Bitmap bitmap) {
+        File file = new File(diskDir, key);
+        //same key rewrites same file, so forget its old size first
+        if (diskEntries.remove(key) != null) {
+            diskBytes -= file.length();
+        }
+        try {
+            FileOutputStream out = new FileOutputStream(file);
+            bitmap.compress(Bitmap.CompressFormat.JPEG, 80, out);
+            out.close();
+        } catch (Exception e) {
+            Log.d(TAG, "writeToDisk: failed due to " + e.getMessage());
+            file.delete();
+            return;
+        }
+
+        diskEntries.put(key, file);
+        diskBytes += file.length();
+        trimDisk();
+    }
+
+    private void trimDisk() {
+        Iterator<Map.Entry<String, File>> iterator = diskEntries.entrySet().iterator();
+        while (diskBytes > maxDiskBytes && iterator.hasNext()) {
+            File eldest = iterator.next().getValue();
+            diskBytes -= eldest.length();
+            eldest.delete();
+            iterator.remove();
+        }
+    }
+}
@@ -0,0 +1,149 @@
+package com.example.bookapp.cache;
+
+import android.util.Log;
+import android.util.LruCache;
+
+import androidx.annotation.NonNull;
+
+import com.example.bookapp.models.ModelUserSummary;
+import com.google.firebase.database.DataSnapshot;
+import com.google.firebase.database.DatabaseError;
+import com.google.firebase.database.DatabaseReference;
+import com.google.firebase.database.FirebaseDatabase;
+import com.google.firebase.database.ValueEventListener;
+
+import java.util.HashMap;
+
+/*Name and profile image of comment authors, keyed by uid
+* - lookups of same uid while it is loading share one read of Users/<uid>/name and Users/<uid>/profileImage
+* - name and profile image of every cached user are watched, so a changed profile replaces its entry
+* - least recently used users are dropped, with their watcher, above maxUsers
+* - only touched on main thread, firebase callbacks are delivered there*/
+public class UserCache {
+
+    private static final String TAG = "USER_CACHE_TAG";
+
+    private static UserCache instance;
+
+    private final LruCache<String, ModelUserSummary> users;
+    private final RequestCoalescer<ModelUserSummary> requests = new RequestCoalescer<>("user");
+
+    //fields of Users/<uid> a summary is made of, watched one by one so other parts of the profile
+    //e.g. Favorites, don't send the user again when they change
+    private static final String[] FIELDS = {"name", "profileImage"};
+
+    //uid -> listeners of FIELDS keeping its entry current
+    private final HashMap<String, ValueEventListener[]> watchers = new HashMap<>();
+
+    private final DatabaseReference ref = FirebaseDatabase.getInstance().getReference("Users");
+
+    private UserCache(int maxUsers) {
+        users = new LruCache<String, ModelUserSummary>(maxUsers) {
+            @Override
+            protected void entryRemoved(boolean evicted, String uid, ModelUserSummary oldUser, ModelUserSummary newUser) {
+                //replaced by a newer profile keeps watching, dropped one stops
+                if (newUser == null) {
+                    unwatch(uid);
+                }
+            }
+        };
+    }
+
+    public static synchronized void init(int maxUsers) {
+        if (instance == null) {
+            instance = new UserCache(maxUsers);
+        }
+    }
+
+    public static UserCache getInstance() {
+        return instance;
+    }
+
+    //cached user is returned right away, without network
+    public void get(String uid, RequestCoalescer.Callback<ModelUserSummary> callback) {
+        ModelUserSummary user = users.get(uid);
+        if (user != null) {
+            callback.onResult(user);
+            return;
+        }
+        requests.request(uid, new RequestCoalescer.Loader<ModelUserSummary>() {
+            @Override
+            public Runnable load(String key, RequestCoalescer.Callback<ModelUserSummary> done) {
+                return watch(key, done);
+            }
+        }, callback);
+    }
+
+    public void cancel(String uid, RequestCoalescer.Callback<ModelUserSummary> callback) {
+        requests.cancel(uid, callback);
+    }
+
+    //drop a user, e.g. after own profile was edited, next lookup reads it again
+    public void invalidate(String uid) {
+        users.remove(uid);
+    }
+
+    private Runnable watch(String uid, RequestCoalescer.Callback<ModelUserSummary> done) {
+        //name and profile image as they arrive, the user is loaded once both did
+        String[] values = new String[FIELDS.length];
+        boolean[] loaded = {false};
+        ValueEventListener[] listeners = new ValueEventListener[FIELDS.length];
+        for (int i = 0; i < FIELDS.length; i++) {
+            int field = i;
+            listeners[i] = new ValueEventListener() {
+                @Override
+                public void onDataChange(@NonNull DataSnapshot snapshot) {
+                    //get data
+                    values[field] = "" + snapshot.getValue();
+                    if (values[0] == null || values[1] == null) {
+                        return;
+                    }
+                    ModelUserSummary user = new ModelUserSummary(uid, values[0], values[1]);
+
+                    if (!loaded[0]) {
+                        loaded[0] = true;
+                        users.put(uid, user);
+                        done.onResult(user);
+                    } else if (users.get(uid) != null) {
+                        //profile changed, rows bound from now on show the new one
+                        Log.d(TAG, "onDataChange: " + FIELDS[field] + " of " + uid + " changed");
+                        users.put(uid, user);
+                    }
+                }
+
+                @Override
+                public void onCancelled(@NonNull DatabaseError error) {
+                    Log.d(TAG, "onCancelled: " + uid + " " + error.getMessage());
+                    unwatch(uid);
+                    if (!loaded[0]) {
+                        loaded[0] = true;
+                        done.onFailure(error.toException());
+                    }
+                }
+            };
+        }
+        watchers.put(uid, listeners);
+        for (int i = 0; i < FIELDS.length; i++) {
+            ref.child(uid).child(FIELDS[i]).addValueEventListener(listeners[i]);
+        }
+
+        //nobody waits for the first read anymore, stop watching
+        return new Runnable() {
+            @Override
+            public void run() {
+                if (!loaded[0]) {
+                    unwatch(uid);
+                }
+            }
+        };
+    }
+
+    private void unwatch(String uid) {
+        ValueEventListener[] listeners = watchers.remove(uid);
+        if (listeners != null) {
+            for (int i = 0; i < FIELDS.length; i++) {
+                ref.child(uid).child(FIELDS[i]).removeEventListener(listeners[i]);
+            }
+        }
+    }
+}
@@ -0,0 +1,223 @@
+package com.example.bookapp.counters;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+
+import com.google.firebase.database.DatabaseError;
+import com.google.firebase.database.DatabaseReference;
+import com.google.firebase.database.FirebaseDatabase;
+import com.google.firebase.database.ServerValue;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+
+/*Write behind buffer of counter increments on Books records, e.g. viewsCount
+* - increments are added up per book and field in memory and saved to disk right away
+* - pending deltas are sent as one multi path update of server increments: after flushInterval,
+*   when app goes to background, or when maxPending counters are waiting
+* - deltas left by process death are loaded and sent on next app start
+* - deltas added while a flush is in flight are kept for the next one
+* - an increment alone would bring a deleted book back as a record with only counts in it, security rules
+*   (database.rules.json) reject counts of books without a url; deltas are only dropped when rules reject them,
+*   one update with a deleted book in it is sent again book by book so only that book's deltas are dropped
+* - on any other failure, e.g. offline, deltas are kept and tried again after a delay that doubles with each failure
+* - with shards > 1 deltas go to a random shard of the counter (see ShardedCounter), its periodic pass folds them into the rollup
+* - only touched on main thread*/
+public class CounterBuffer {
+
+    private static final String TAG = "COUNTER_BUFFER_TAG";
+
+    private static final String PREFS = "counter_buffer";
+
+    //delay of a flush after failed ones doubles, up to this
+    private static final long MAX_RETRY_DELAY_MS = 30 * 60 * 1000; //30 minutes
+
+    private static CounterBuffer instance;
+
+    private final SharedPreferences prefs;
+    private final long flushIntervalMs;
+    private final int maxPending;
+    private final int shards;
+
+    //"<bookId>/<field>" -> delta not sent yet
+    private final HashMap<String, Long> pending = new HashMap<>();
+
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private boolean flushScheduled = false;
+    private boolean flushing = false;
+    //flushes failed in a row
+    private int failedFlushes = 0;
+
+    //increments added and writes sent, for how much the buffer saves
+    private long addedCount = 0;
+    private long writeCount = 0;
+
+    private final Runnable flushRunnable = new Runnable() {
+        @Override
+        public void run() {
+            flushScheduled = false;
+            flush();
+        }
+    };
+
+    private CounterBuffer(Context context, long flushIntervalMs, int maxPending, int shards) {
+        this.prefs = context.getSharedPreferences(PREFS, Context.MODE_PRIVATE);
+        this.flushIntervalMs = flushIntervalMs;
+        this.maxPending = maxPending;
+        this.shards = shards;
+        for (Map.Entry<String, ?> entry : prefs.getAll().entrySet()) {
+            if (entry.getValue() instanceof Long) {
+                pending.put(entry.getKey(), (Long) entry.getValue());
+            }
+        }
+        Log.d(TAG, "CounterBuffer: " + pending.size() + " counters left from last run");
+    }
+
+    public static synchronized void init(Context context, long flushIntervalMs, int maxPending, int shards) {
+        if (instance == null) {
+            instance = new CounterBuffer(context.getApplicationContext(), flushIntervalMs, maxPending, shards);
+            instance.scheduleFlush();
+        }
+    }
+
+    public static CounterBuffer getInstance() {
+        return instance;
+    }
+
+    public void increment(String bookId, String field) {
+        String path = bookId + "/" + field;
+        Long delta = pending.get(path);
+        long newDelta = (delta == null ? 0 : delta) + 1;
+        pending.put(path, newDelta);
+        prefs.edit().putLong(path, newDelta).apply();
+        addedCount++;
+
+        if (pending.size() >= maxPending && failedFlushes == 0) {
+            flush();
+        } else {
+            scheduleFlush();
+        }
+    }
+
+    //book was deleted, its pending counts must not bring back a record with only counters in it
+    public void drop(String bookId) {
+        SharedPreferences.Editor editor = prefs.edit();
+        String prefix = bookId + "/";
+        for (String path : pending.keySet().toArray(new String[0])) {
+            if (path.startsWith(prefix)) {
+                pending.remove(path);
+                editor.remove(path);
+            }
+        }
+        editor.apply();
+    }
+
+    public void flush() {
+        if (flushing || pending.isEmpty()) {
+            return;
+        }
+        handler.removeCallbacks(flushRunnable);
+        flushScheduled = false;
+        flushing = true;
+
+        //deltas of this flush, taken off pending only once the server has them
+        HashMap<String, Long> sent = new HashMap<>(pending);
+        send(sent, new Runnable() {
+            @Override
+            public void run() {
+                flushing = false;
+                scheduleFlush();
+            }
+        });
+    }
+
+    //sends deltas as one multi path update, then runs done
+    private void send(HashMap<String, Long> sent, Runnable done) {
+        HashMap<String, Object> updates = new HashMap<>();
+        HashSet<String> bookIds = new HashSet<>();
+        for (Map.Entry<String, Long> entry : sent.entrySet()) {
+            String[] bookIdAndField = entry.getKey().split("/", 2);
+            updates.put(ShardedCounter.incrementPath(bookIdAndField[0], bookIdAndField[1], shards), ServerValue.increment(entry.getValue()));
+            bookIds.add(bookIdAndField[0]);
+        }
+        writeCount++;
+
+        FirebaseDatabase.getInstance().getReference()
+                .updateChildren(updates, new DatabaseReference.CompletionListener() {
+                    @Override
+                    public void onComplete(DatabaseError error, @NonNull DatabaseReference ref) {
+                        if (error == null) {
+                            failedFlushes = 0;
+                            takeOff(sent);
+                            Log.d(TAG, "onComplete: flushed " + sent.size() + " counters, " + addedCount + " increments in " + writeCount + " writes");
+                            done.run();
+                        } else if (error.getCode() != DatabaseError.PERMISSION_DENIED) {
+                            //e.g. offline, deltas stay pending and on disk
+                            failedFlushes++;
+                            Log.d(TAG, "onComplete: flush failed " + failedFlushes + " times, last due to " + error.getMessage());
+                            done.run();
+                        } else if (bookIds.size() == 1) {
+                            //rules only reject counts of a book without a record, i.e. a deleted one
+                            String bookId = bookIds.iterator().next();
+                            Log.d(TAG, "onComplete: book " + bookId + " was deleted, dropping its counts");
+                            takeOff(sent);
+                            done.run();
+                        } else {
+                            //one of the books was deleted, which one is found by sending each book on its own
+                            sendPerBook(sent, bookIds.toArray(new String[0]), 0, done);
+                        }
+                    }
+                });
+    }
+
+    private void sendPerBook(HashMap<String, Long> sent, String[] bookIds, int index, Runnable done) {
+        if (index >= bookIds.length) {
+            done.run();
+            return;
+        }
+        HashMap<String, Long> bookSent = new HashMap<>();
+        String prefix = bookIds[index] + "/";
+        for (Map.Entry<String, Long> entry : sent.entrySet()) {
+            if (entry.getKey().startsWith(prefix)) {
+                bookSent.put(entry.getKey(), entry.getValue());
+            }
+        }
+        send(bookSent, new Runnable() {
+            @Override
+            public void run() {
+                sendPerBook(sent, bookIds, index + 1, done);
+            }
+        });
+    }
+
+    //take deltas of a flush off pending, what was added meanwhile stays
+    private void takeOff(HashMap<String, Long> sent) {
+        SharedPreferences.Editor editor = prefs.edit();
+        for (Map.Entry<String, Long> entry : sent.entrySet()) {
+            Long delta = pending.get(entry.getKey());
+            long left = (delta == null ? 0 : delta) - entry.getValue();
+            if (left > 0) {
+                pending.put(entry.getKey(), left);
+                editor.putLong(entry.getKey(), left);
+            } else {
+                pending.remove(entry.getKey());
+                editor.remove(entry.getKey());
+            }
+        }
+        editor.apply();
+    }
+
+    private void scheduleFlush() {
+        if (!flushScheduled && !pending.isEmpty()) {
+            flushScheduled = true;
+            long delay = failedFlushes == 0 ? flushIntervalMs : Math.min(flushIntervalMs << Math.min(failedFlushes, 10), MAX_RETRY_DELAY_MS);
+            handler.postDelayed(flushRunnable, delay);
+        }
+    }
+}
@@ -0,0 +1,30 @@
+package com.example.bookapp.counters;
+
+/*Arithmetic of the counts in Books records, used inside db transactions
+* - free of firebase and android classes, so it runs in host unit tests
+* - every book is written with its counts, so a missing count means a deleted book that must not be brought back*/
+public class CounterValues {
+
+    //count after adding delta to current value of a count node, null if node is missing
+    public static Long add(Object current, long delta) {
+        if (current == null) {
+            return null;
+        }
+        return toLong(current) + delta;
+    }
+
+    //db returns whole numbers as Long, anything else is read as best it can, a missing value is zero
+    static long toLong(Object value) {
+        if (value == null) {
+            return 0;
+        }
+        if (value instanceof Number) {
+            return ((Number) value).longValue();
+        }
+        try {
+            return Long.parseLong(("" + value).trim());
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+}
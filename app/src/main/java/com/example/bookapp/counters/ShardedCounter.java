@@ -0,0 +1,172 @@
+package com.example.bookapp.counters;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+
+import com.google.firebase.database.DataSnapshot;
+import com.google.firebase.database.DatabaseError;
+import com.google.firebase.database.DatabaseReference;
+import com.google.firebase.database.FirebaseDatabase;
+import com.google.firebase.database.Query;
+import com.google.firebase.database.ServerValue;
+import com.google.firebase.database.ValueEventListener;
+
+import java.util.HashMap;
+import java.util.Random;
+
+/*Counter of a Books record split over shards, so clients incrementing a popular book don't all write the same node
+* - Books/<bookId>/<field> is the rollup, queries like most viewed order by it
+* - increments go to Counters/<bookId>/<field>/<shard>, shard picked at random; shards are outside Books,
+*   so lists reading Books records don't download them
+* - value of the counter is rollup + all shards
+* - a periodic pass walks Counters and folds every counter it finds into its rollup; it runs only while the admin
+*   dashboard is open, readers never fold, so shards are only written by increments
+* - folding a book is one multi path update of server increments: each shard is decreased by the value read from it and
+*   the rollup increased by their sum; increments meanwhile stay in their shards, a second pass running at the same time
+*   or an update that fails never changes rollup + shards, so no count is lost or counted twice
+* - folded shards are left at 0, at most shards nodes per counter
+* - rules reject the rollup of a deleted book (database.rules.json), its shards are removed instead
+* - only touched on main thread, firebase callbacks are delivered there*/
+public class ShardedCounter {
+
+    private static final String TAG = "SHARDED_COUNTER_TAG";
+
+    private static final String COUNTERS = "Counters";
+
+    private static final Random random = new Random();
+
+    private static final Handler handler = new Handler(Looper.getMainLooper());
+    private static long compactIntervalMs;
+    private static int compactPageSize;
+    private static boolean compacting = false;
+
+    private static final Runnable compactRunnable = new Runnable() {
+        @Override
+        public void run() {
+            compactAll();
+            handler.postDelayed(this, compactIntervalMs);
+        }
+    };
+
+    //db path an increment of field goes to, the rollup itself when not sharded
+    public static String incrementPath(String bookId, String field, int shards) {
+        if (shards <= 1) {
+            return "Books/" + bookId + "/" + field;
+        }
+        return COUNTERS + "/" + bookId + "/" + field + "/" + random.nextInt(shards);
+    }
+
+    //value of a counter from its rollup and its Counters/<bookId>/<field> node, null if it has neither
+    public static Long read(Long rollup, DataSnapshot shards) {
+        if (rollup == null && !shards.exists()) {
+            return null;
+        }
+        long total = rollup == null ? 0 : rollup;
+        for (DataSnapshot shard : shards.getChildren()) {
+            total += CounterValues.toLong(shard.getValue());
+        }
+        return total;
+    }
+
+    //first pass right away, e.g. for shards written while no admin was around, then one every intervalMs
+    public static void startCompaction(long intervalMs, int pageSize) {
+        compactIntervalMs = intervalMs;
+        compactPageSize = pageSize;
+        handler.removeCallbacks(compactRunnable);
+        handler.post(compactRunnable);
+    }
+
+    //a pass walking now finishes, no new one is started
+    public static void stopCompaction() {
+        handler.removeCallbacks(compactRunnable);
+    }
+
+    //drop Counters of a deleted book, e.g. written by a flush racing the delete
+    public static void remove(String bookId) {
+        FirebaseDatabase.getInstance().getReference(COUNTERS).child(bookId).removeValue();
+    }
+
+    private static void compactAll() {
+        if (compacting) {
+            //last pass still walking, e.g. slow connection
+            return;
+        }
+        compacting = true;
+        compactPage(null, 0);
+    }
+
+    private static void compactPage(String lastKey, int booksBefore) {
+        Query query = FirebaseDatabase.getInstance().getReference(COUNTERS).orderByKey();
+        if (lastKey != null) {
+            query = query.startAfter(lastKey);
+        }
+        query.limitToFirst(compactPageSize)
+                .addListenerForSingleValueEvent(new ValueEventListener() {
+                    @Override
+                    public void onDataChange(@NonNull DataSnapshot snapshot) {
+                        String pageLastKey = null;
+                        for (DataSnapshot book : snapshot.getChildren()) {
+                            compact(book);
+                            pageLastKey = book.getKey();
+                        }
+                        int books = booksBefore + (int) snapshot.getChildrenCount();
+                        if (snapshot.getChildrenCount() < compactPageSize) {
+                            Log.d(TAG, "onDataChange: compaction pass started on " + books + " books");
+                            compacting = false;
+                        } else {
+                            compactPage(pageLastKey, books);
+                        }
+                    }
+
+                    @Override
+                    public void onCancelled(@NonNull DatabaseError error) {
+                        Log.d(TAG, "onCancelled: compaction pass failed due to " + error.getMessage());
+                        compacting = false;
+                    }
+                });
+    }
+
+    //fold shards of all counters of a book into their rollups
+    private static void compact(DataSnapshot book) {
+        String bookId = book.getKey();
+        //Step 1: what each shard holds now
+        HashMap<String, Object> updates = new HashMap<>();
+        for (DataSnapshot counter : book.getChildren()) {
+            long total = 0;
+            for (DataSnapshot shard : counter.getChildren()) {
+                long value = CounterValues.toLong(shard.getValue());
+                if (value != 0) {
+                    updates.put(COUNTERS + "/" + bookId + "/" + counter.getKey() + "/" + shard.getKey(), ServerValue.increment(-value));
+                    total += value;
+                }
+            }
+            if (total != 0) {
+                updates.put("Books/" + bookId + "/" + counter.getKey(), ServerValue.increment(total));
+            }
+        }
+        if (updates.isEmpty()) {
+            return;
+        }
+
+        //Step 2: take it off the shards and add it to the rollups in one update, the sum never changes
+        FirebaseDatabase.getInstance().getReference()
+                .updateChildren(updates, new DatabaseReference.CompletionListener() {
+                    @Override
+                    public void onComplete(DatabaseError error, @NonNull DatabaseReference ref) {
+                        if (error == null) {
+                            Log.d(TAG, "onComplete: folded counters of " + bookId);
+                        } else if (error.getCode() == DatabaseError.PERMISSION_DENIED) {
+                            //rules reject a rollup of a book without a record
+                            Log.d(TAG, "onComplete: book " + bookId + " was deleted, removing its counters");
+                            remove(bookId);
+                        } else {
+                            //nothing was applied, shards keep their values for next pass
+                            Log.d(TAG, "onComplete: folding counters of " + bookId + " failed due to " + error.getMessage());
+                        }
+                    }
+                });
+    }
+}
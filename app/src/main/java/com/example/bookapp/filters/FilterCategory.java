@@ -9,20 +9,19 @@ import java.util.ArrayList;
 
 public class FilterCategory extends Filter {
 
-    //arraylist in which we want to search
-    ArrayList<ModelCategory> filterList;
     //adapter in which filter need to be implemented
     AdapterCategory adapterCategory;
 
     //constructor
-    public FilterCategory(ArrayList<ModelCategory> filterList, AdapterCategory adapterCategory) {
-        this.filterList = filterList;
+    public FilterCategory(AdapterCategory adapterCategory) {
         this.adapterCategory = adapterCategory;
     }
 
     @Override
     protected FilterResults performFiltering(CharSequence constraint) {
         FilterResults results = new FilterResults();
+        //latest list of the adapter, it is replaced when the db list changes
+        ArrayList<ModelCategory> filterList = adapterCategory.filterList;
         //value should not be null and empty
         if (constraint != null && constraint.length() > 0) {
 
@@ -52,10 +51,7 @@ public class FilterCategory extends Filter {
 
     @Override
     protected void publishResults(CharSequence constraint, FilterResults results) {
-        //apply filter changes
-        adapterCategory.categoryArrayList = (ArrayList<ModelCategory>)results.values;
-
-        //notify changes
-        adapterCategory.notifyDataSetChanged();
+        //apply filter changes, only rows that differ are bound again
+        adapterCategory.submitFiltered(constraint, (ArrayList<ModelCategory>)results.values);
     }
 }
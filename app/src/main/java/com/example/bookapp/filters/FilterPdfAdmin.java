@@ -9,20 +9,19 @@ import java.util.ArrayList;
 
 public class FilterPdfAdmin extends Filter {
 
-    //arraylist in which we want to search
-    ArrayList<ModelPdf> filterList;
     //adapter in which filter need to be implemented
     AdapterPdfAdmin adapterPdfAdmin;
 
     //constructor
-    public FilterPdfAdmin(ArrayList<ModelPdf> filterList, AdapterPdfAdmin adapterPdfAdmin) {
-        this.filterList = filterList;
+    public FilterPdfAdmin(AdapterPdfAdmin adapterPdfAdmin) {
         this.adapterPdfAdmin = adapterPdfAdmin;
     }
 
     @Override
     protected FilterResults performFiltering(CharSequence constraint) {
         FilterResults results = new FilterResults();
+        //latest list of the adapter, it is replaced when the db list changes
+        ArrayList<ModelPdf> filterList = adapterPdfAdmin.filterList;
         //value should not be null and empty
         if (constraint != null && constraint.length() > 0) {
 
@@ -52,10 +51,7 @@ public class FilterPdfAdmin extends Filter {
 
     @Override
     protected void publishResults(CharSequence constraint, FilterResults results) {
-        //apply filter changes
-        adapterPdfAdmin.pdfArrayList = (ArrayList<ModelPdf>)results.values;
-
-        //notify changes
-        adapterPdfAdmin.notifyDataSetChanged();
+        //apply filter changes, only rows that differ are bound again
+        adapterPdfAdmin.submitFiltered(constraint, (ArrayList<ModelPdf>)results.values);
     }
 }
@@ -9,20 +9,19 @@ import java.util.ArrayList;
 
 public class FilterPdfUser extends Filter {
 
-    //arrayList in which we want to search
-    ArrayList<ModelPdf> filterList;
     //adapter in which filter need to be implemented
     AdapterPdfUser adapterPdfUser;
 
     //constructor
-    public FilterPdfUser(ArrayList<ModelPdf> filterList, AdapterPdfUser adapterPdfUser) {
-        this.filterList = filterList;
+    public FilterPdfUser(AdapterPdfUser adapterPdfUser) {
         this.adapterPdfUser = adapterPdfUser;
     }
 
     @Override
     protected FilterResults performFiltering(CharSequence constraint) {
         FilterResults results = new FilterResults();
+        //latest list of the adapter, it is replaced when the db list changes
+        ArrayList<ModelPdf> filterList = adapterPdfUser.filterList;
         //value to be searched should not be null/empty
         if (constraint!=null || constraint.length()>0){
             //not null nor empty
@@ -52,10 +51,7 @@ public class FilterPdfUser extends Filter {
 
     @Override
     protected void publishResults(CharSequence constraint, FilterResults results) {
-        //apply filter changes
-        adapterPdfUser.pdfArrayList = (ArrayList<ModelPdf>)results.values;
-
-        //notify changes
-        adapterPdfUser.notifyDataSetChanged();
+        //apply filter changes, only rows that differ are bound again
+        adapterPdfUser.submitFiltered(constraint, (ArrayList<ModelPdf>)results.values);
     }
 }
@@ -0,0 +1,223 @@
+package com.example.bookapp.jobs;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+
+import com.example.bookapp.Constants;
+import com.google.android.gms.tasks.OnFailureListener;
+import com.google.android.gms.tasks.OnSuccessListener;
+import com.google.firebase.database.DataSnapshot;
+import com.google.firebase.database.DatabaseError;
+import com.google.firebase.database.FirebaseDatabase;
+import com.google.firebase.database.Query;
+import com.google.firebase.database.ValueEventListener;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+
+/*Admin job that moves comments from Books/<bookId>/Comments to Comments/<bookId>
+* - walks Books ordered by key, one page of records at a time
+* - comments of a page are moved in multi path updates of at most batchSize comments, so books with many comments
+*   don't make one write too big to ever succeed; each update copies its comments to the new tree and removes them
+*   from the book, so a comment is never in both places or in none
+* - only the comments read are removed, a comment written meanwhile by an old app version is moved on next run
+* - key of the last moved page is checkpointed, a stopped or killed run continues after it; inside a page the book and
+*   comment the last update ended at is checkpointed too, and the comments it moved are already gone from the page
+* - only this job moves comments, readers of a book never write to Books or Comments
+* - only touched on main thread, firebase callbacks are delivered there*/
+public class CommentsMigration {
+
+    private static final String TAG = "COMMENTS_MIGRATION_TAG";
+
+    private static final String PREFS = "comments_migration";
+
+    public interface Listener {
+        //finished is true when run stopped or walked all books
+        void onMigrationProgress(int booksChecked, int commentsMoved, boolean finished);
+    }
+
+    private static CommentsMigration instance;
+
+    private final int pageSize;
+    private final int batchSize;
+    private final SharedPreferences checkpoint;
+
+    private boolean running = false;
+    private boolean stopRequested = false;
+    private Listener listener;
+
+    //progress of whole walk, persisted with the checkpoint
+    private int booksChecked = 0;
+    private int commentsMoved = 0;
+
+    private CommentsMigration(Context context, int pageSize, int batchSize) {
+        this.pageSize = pageSize;
+        this.batchSize = batchSize;
+        this.checkpoint = context.getSharedPreferences(PREFS, Context.MODE_PRIVATE);
+    }
+
+    public static synchronized CommentsMigration getInstance(Context context) {
+        if (instance == null) {
+            instance = new CommentsMigration(context.getApplicationContext(), Constants.COMMENTS_MIGRATION_PAGE_SIZE, Constants.COMMENTS_MIGRATION_BATCH_SIZE);
+        }
+        return instance;
+    }
+
+    public void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    public boolean isRunning() {
+        return running;
+    }
+
+    public void start() {
+        if (running) {
+            return;
+        }
+        running = true;
+        stopRequested = false;
+        booksChecked = checkpoint.getInt("checked", 0);
+        commentsMoved = checkpoint.getInt("moved", 0);
+        Log.d(TAG, "start: continuing after " + checkpoint.getString("lastKey", "start")
+                + (checkpoint.contains("cursorBook") ? ", inside book " + checkpoint.getString("cursorBook", "") + " after comment " + checkpoint.getString("cursorComment", "") : "")
+                + ", " + commentsMoved + " comments moved so far");
+        loadPage();
+    }
+
+    //page being moved is finished, next page is not started
+    public void stop() {
+        if (running) {
+            stopRequested = true;
+        }
+    }
+
+    //a comment to move and the book it's in
+    private static class Move {
+        final String bookId;
+        final DataSnapshot comment;
+
+        Move(String bookId, DataSnapshot comment) {
+            this.bookId = bookId;
+            this.comment = comment;
+        }
+    }
+
+    private void loadPage() {
+        String lastKey = checkpoint.getString("lastKey", null);
+        Query query = FirebaseDatabase.getInstance().getReference("Books").orderByKey();
+        if (lastKey != null) {
+            query = query.startAfter(lastKey);
+        }
+        query.limitToFirst(pageSize)
+                .addListenerForSingleValueEvent(new ValueEventListener() {
+                    @Override
+                    public void onDataChange(@NonNull DataSnapshot snapshot) {
+                        if (!snapshot.hasChildren()) {
+                            //walked all books, next run starts from the beginning
+                            Log.d(TAG, "onDataChange: all books checked, " + commentsMoved + " comments moved");
+                            checkpoint.edit().clear().apply();
+                            finish();
+                            return;
+                        }
+
+                        //comments moved by a run stopped inside this page are gone from Books, only the rest is read
+                        ArrayList<Move> moves = new ArrayList<>();
+                        String pageLastKey = null;
+                        for (DataSnapshot book : snapshot.getChildren()) {
+                            for (DataSnapshot comment : book.child("Comments").getChildren()) {
+                                moves.add(new Move(book.getKey(), comment));
+                            }
+                            pageLastKey = book.getKey();
+                        }
+                        moveBatch(moves, 0, (int) snapshot.getChildrenCount(), pageLastKey);
+                    }
+
+                    @Override
+                    public void onCancelled(@NonNull DatabaseError error) {
+                        Log.d(TAG, "onCancelled: failed to load page due to " + error.getMessage());
+                        finish();
+                    }
+                });
+    }
+
+    //moves comments of a page from position from on, batchSize per update so no write gets too big
+    private void moveBatch(ArrayList<Move> moves, int from, int pageBooks, String pageLastKey) {
+        if (from >= moves.size()) {
+            pageDone(pageBooks, pageLastKey);
+            return;
+        }
+        if (from > 0 && stopRequested) {
+            //rest of the page is moved on next run, cursor says where this one stopped
+            finish();
+            return;
+        }
+
+        int to = Math.min(from + batchSize, moves.size());
+        HashMap<String, Object> updates = new HashMap<>();
+        for (int i = from; i < to; i++) {
+            Move move = moves.get(i);
+            updates.put("Comments/" + move.bookId + "/" + move.comment.getKey(), move.comment.getValue());
+            updates.put("Books/" + move.bookId + "/Comments/" + move.comment.getKey(), null);
+        }
+        Move last = moves.get(to - 1);
+        FirebaseDatabase.getInstance().getReference()
+                .updateChildren(updates)
+                .addOnSuccessListener(new OnSuccessListener<Void>() {
+                    @Override
+                    public void onSuccess(Void unused) {
+                        commentsMoved += to - from;
+                        //per book cursor, last comment moved
+                        checkpoint.edit()
+                                .putString("cursorBook", last.bookId)
+                                .putString("cursorComment", last.comment.getKey())
+                                .putInt("moved", commentsMoved)
+                                .apply();
+                        Log.d(TAG, "onSuccess: moved " + (to - from) + " comments up to " + last.bookId + "/" + last.comment.getKey());
+                        notifyListener(false);
+                        moveBatch(moves, to, pageBooks, pageLastKey);
+                    }
+                })
+                .addOnFailureListener(new OnFailureListener() {
+                    @Override
+                    public void onFailure(@NonNull Exception e) {
+                        //nothing of the batch was moved, next run starts at this page again with what's left of it
+                        Log.d(TAG, "onFailure: failed to move comments after " + checkpoint.getString("cursorBook", "start") + "/" + checkpoint.getString("cursorComment", "start") + " due to " + e.getMessage());
+                        finish();
+                    }
+                });
+    }
+
+    private void pageDone(int pageBooks, String pageLastKey) {
+        booksChecked += pageBooks;
+        checkpoint.edit()
+                .putString("lastKey", pageLastKey)
+                .remove("cursorBook")
+                .remove("cursorComment")
+                .putInt("checked", booksChecked)
+                .putInt("moved", commentsMoved)
+                .apply();
+        Log.d(TAG, "pageDone: books up to " + pageLastKey + " checked, " + booksChecked + " books, " + commentsMoved + " comments moved");
+        notifyListener(false);
+
+        if (stopRequested) {
+            finish();
+        } else {
+            loadPage();
+        }
+    }
+
+    private void finish() {
+        running = false;
+        notifyListener(true);
+    }
+
+    private void notifyListener(boolean finished) {
+        if (listener != null) {
+            listener.onMigrationProgress(booksChecked, commentsMoved, finished);
+        }
+    }
+}
@@ -0,0 +1,305 @@
+package com.example.bookapp.jobs;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.net.Uri;
+import android.os.SystemClock;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+
+import com.example.bookapp.Constants;
+import com.example.bookapp.MyApplication;
+import com.example.bookapp.cache.BookStore;
+import com.example.bookapp.upload.BookRecordWriter;
+import com.example.bookapp.upload.CoverRenderer;
+import com.google.android.gms.tasks.OnFailureListener;
+import com.google.android.gms.tasks.OnSuccessListener;
+import com.google.android.gms.tasks.Task;
+import com.google.android.gms.tasks.Tasks;
+import com.google.firebase.database.DataSnapshot;
+import com.google.firebase.database.DatabaseError;
+import com.google.firebase.database.DatabaseReference;
+import com.google.firebase.database.FirebaseDatabase;
+import com.google.firebase.database.Query;
+import com.google.firebase.database.ValueEventListener;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+/*Admin job that fills pageCount, sizeBytes and covers on Books records uploaded before those were stored
+* - walks Books ordered by key, one page of records at a time
+* - at most maxConcurrent books of a page are processed at once, each one needs its pdf (through book store)
+* - key of the last finished page is checkpointed, a stopped or killed run continues after it
+* - only touched on main thread, firebase callbacks are delivered there*/
+public class MetadataBackfill {
+
+    private static final String TAG = "BACKFILL_TAG";
+
+    private static final String PREFS = "metadata_backfill";
+
+    public interface Listener {
+        //checked books include the ones that had nothing missing, finished is true when run stopped or walked all books
+        void onBackfillProgress(int checked, int updated, int failed, long booksPerMinute, boolean finished);
+    }
+
+    private static MetadataBackfill instance;
+
+    private final Context context;
+    private final int pageSize;
+    private final int maxConcurrent;
+    private final SharedPreferences checkpoint;
+
+    private boolean running = false;
+    private boolean stopRequested = false;
+    private Listener listener;
+
+    //books of current page, next one to start and number being processed
+    private final ArrayList<DataSnapshot> pageBooks = new ArrayList<>();
+    private int nextIndex = 0;
+    private int activeCount = 0;
+
+    //progress of whole walk, persisted with the checkpoint
+    private int checkedCount = 0;
+    private int updatedCount = 0;
+    private int failedCount = 0;
+    //time this run started and books it processed, for throughput
+    private long runStartTime = 0;
+    private int runProcessedCount = 0;
+
+    private MetadataBackfill(Context context, int pageSize, int maxConcurrent) {
+        this.context = context;
+        this.pageSize = pageSize;
+        this.maxConcurrent = maxConcurrent;
+        this.checkpoint = context.getSharedPreferences(PREFS, Context.MODE_PRIVATE);
+    }
+
+    public static synchronized MetadataBackfill getInstance(Context context) {
+        if (instance == null) {
+            instance = new MetadataBackfill(context.getApplicationContext(), Constants.BACKFILL_PAGE_SIZE, Constants.BACKFILL_CONCURRENCY);
+        }
+        return instance;
+    }
+
+    public void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    public boolean isRunning() {
+        return running;
+    }
+
+    public void start() {
+        if (running) {
+            return;
+        }
+        running = true;
+        stopRequested = false;
+        checkedCount = checkpoint.getInt("checked", 0);
+        updatedCount = checkpoint.getInt("updated", 0);
+        failedCount = checkpoint.getInt("failed", 0);
+        runStartTime = SystemClock.elapsedRealtime();
+        runProcessedCount = 0;
+        Log.d(TAG, "start: continuing after " + checkpoint.getString("lastKey", "start") + ", " + checkedCount + " books checked so far");
+        loadPage();
+    }
+
+    //books being processed are finished, next page is not started
+    public void stop() {
+        if (running) {
+            stopRequested = true;
+        }
+    }
+
+    private void loadPage() {
+        String lastKey = checkpoint.getString("lastKey", null);
+        Query query = FirebaseDatabase.getInstance().getReference("Books").orderByKey();
+        if (lastKey != null) {
+            query = query.startAfter(lastKey);
+        }
+        query.limitToFirst(pageSize)
+                .addListenerForSingleValueEvent(new ValueEventListener() {
+                    @Override
+                    public void onDataChange(@NonNull DataSnapshot snapshot) {
+                        pageBooks.clear();
+                        for (DataSnapshot ds : snapshot.getChildren()) {
+                            pageBooks.add(ds);
+                        }
+                        nextIndex = 0;
+                        if (pageBooks.isEmpty()) {
+                            //walked all books, next run starts from the beginning
+                            Log.d(TAG, "onDataChange: all books checked, " + updatedCount + " updated, " + failedCount + " failed");
+                            checkpoint.edit().clear().apply();
+                            finish();
+                            return;
+                        }
+                        pumpPage();
+                    }
+
+                    @Override
+                    public void onCancelled(@NonNull DatabaseError error) {
+                        Log.d(TAG, "onCancelled: failed to load page due to " + error.getMessage());
+                        finish();
+                    }
+                });
+    }
+
+    private void pumpPage() {
+        while (activeCount < maxConcurrent && nextIndex < pageBooks.size()) {
+            DataSnapshot book = pageBooks.get(nextIndex++);
+            checkedCount++;
+            if (needsBackfill(book)) {
+                activeCount++;
+                backfillBook(book);
+            }
+        }
+
+        if (activeCount == 0 && nextIndex >= pageBooks.size()) {
+            //page done, checkpoint after its last key
+            String lastKey = pageBooks.get(pageBooks.size() - 1).getKey();
+            checkpoint.edit()
+                    .putString("lastKey", lastKey)
+                    .putInt("checked", checkedCount)
+                    .putInt("updated", updatedCount)
+                    .putInt("failed", failedCount)
+                    .apply();
+            Log.d(TAG, "pumpPage: page done up to " + lastKey + ", " + checkedCount + " checked, " + updatedCount + " updated, "
+                    + failedCount + " failed, " + getBooksPerMinute() + " books/min");
+            notifyListener(false);
+
+            if (stopRequested) {
+                finish();
+            } else {
+                loadPage();
+            }
+        }
+    }
+
+    private static boolean needsBackfill(DataSnapshot book) {
+        String coverUrl = "" + book.child("coverUrl").getValue();
+        return !book.hasChild("pageCount") || !book.hasChild("sizeBytes")
+                || coverUrl.isEmpty() || coverUrl.equals("null");
+    }
+
+    private void backfillBook(DataSnapshot book) {
+        String bookId = book.getKey();
+        String bookUrl = "" + book.child("url").getValue();
+        String coverUrl = "" + book.child("coverUrl").getValue();
+        boolean needsCover = coverUrl.isEmpty() || coverUrl.equals("null");
+        Log.d(TAG, "backfillBook: " + bookId + " " + book.child("title").getValue());
+
+        //Step 1: get local copy of the pdf, shared with reader and thumbnails
+        BookStore.getInstance().fetch(bookUrl, new MyApplication.DownloadCallback() {
+            @Override
+            public void onProgress(long bytesTransferred, long totalBytes) {
+
+            }
+
+            @Override
+            public void onDownloaded(File file) {
+                //Step 2: read page count, size and covers from it
+                CoverRenderer.render(context, Uri.fromFile(file), new CoverRenderer.Callback() {
+                    @Override
+                    public void onRendered(byte[] smallCover, byte[] largeCover, int pageCount, long sizeBytes) {
+                        HashMap<String, Object> updates = new HashMap<>();
+                        if (pageCount > 0) {
+                            updates.put("pageCount", pageCount);
+                        }
+                        if (sizeBytes > 0) {
+                            updates.put("sizeBytes", sizeBytes);
+                        }
+                        if (!needsCover || smallCover == null || largeCover == null) {
+                            writeUpdates(bookId, updates);
+                            return;
+                        }
+
+                        //Step 3: upload covers next to the pdf, book is still updated if that fails
+                        Task<Uri> smallTask = BookRecordWriter.uploadCover("Books/" + bookId + "_cover_small", smallCover);
+                        Task<Uri> largeTask = BookRecordWriter.uploadCover("Books/" + bookId + "_cover_large", largeCover);
+                        Tasks.<Uri>whenAllSuccess(smallTask, largeTask)
+                                .addOnSuccessListener(new OnSuccessListener<List<Uri>>() {
+                                    @Override
+                                    public void onSuccess(List<Uri> coverUrls) {
+                                        updates.put("coverUrl", "" + coverUrls.get(0));
+                                        updates.put("coverUrlLarge", "" + coverUrls.get(1));
+                                        writeUpdates(bookId, updates);
+                                    }
+                                })
+                                .addOnFailureListener(new OnFailureListener() {
+                                    @Override
+                                    public void onFailure(@NonNull Exception e) {
+                                        Log.d(TAG, "onFailure: cover upload of " + bookId + " failed due to " + e.getMessage());
+                                        writeUpdates(bookId, updates);
+                                    }
+                                });
+                    }
+                });
+            }
+
+            @Override
+            public void onFailure(Exception e) {
+                Log.d(TAG, "onFailure: failed to get pdf of " + bookId + " due to " + e.getMessage());
+                bookDone(false);
+            }
+        });
+    }
+
+    private void writeUpdates(String bookId, HashMap<String, Object> updates) {
+        if (updates.isEmpty()) {
+            //pdf couldn't be read, nothing to fill in
+            Log.d(TAG, "writeUpdates: nothing found for " + bookId);
+            bookDone(false);
+            return;
+        }
+
+        //Step 4: only missing fields are written, rest of the record is left alone
+        DatabaseReference ref = FirebaseDatabase.getInstance().getReference("Books");
+        ref.child(bookId)
+                .updateChildren(updates)
+                .addOnSuccessListener(new OnSuccessListener<Void>() {
+                    @Override
+                    public void onSuccess(Void unused) {
+                        Log.d(TAG, "onSuccess: updated " + bookId + " with " + updates.keySet());
+                        bookDone(true);
+                    }
+                })
+                .addOnFailureListener(new OnFailureListener() {
+                    @Override
+                    public void onFailure(@NonNull Exception e) {
+                        Log.d(TAG, "onFailure: failed to update " + bookId + " due to " + e.getMessage());
+                        bookDone(false);
+                    }
+                });
+    }
+
+    private void bookDone(boolean updated) {
+        activeCount--;
+        runProcessedCount++;
+        if (updated) {
+            updatedCount++;
+        } else {
+            failedCount++;
+        }
+        notifyListener(false);
+        pumpPage();
+    }
+
+    private void finish() {
+        running = false;
+        Log.d(TAG, "finish: " + runProcessedCount + " books processed in this run, " + getBooksPerMinute() + " books/min");
+        notifyListener(true);
+    }
+
+    private long getBooksPerMinute() {
+        long elapsed = SystemClock.elapsedRealtime() - runStartTime;
+        return elapsed <= 0 ? 0 : runProcessedCount * 60000L / elapsed;
+    }
+
+    private void notifyListener(boolean finished) {
+        if (listener != null) {
+            listener.onBackfillProgress(checkedCount, updatedCount, failedCount, getBooksPerMinute(), finished);
+        }
+    }
+}
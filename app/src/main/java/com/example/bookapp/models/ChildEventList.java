@@ -0,0 +1,133 @@
+package com.example.bookapp.models;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+
+import com.google.firebase.database.ChildEventListener;
+import com.google.firebase.database.DataSnapshot;
+import com.google.firebase.database.DatabaseError;
+import com.google.firebase.database.Query;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/*Ordered list of the children of a query, kept current by child events
+* - each added/changed/removed/moved child changes only its own entry, in query order
+* - listener gets a copy of the list; events of one frame (e.g. first load) are published once
+* - only touched on main thread, firebase callbacks are delivered there*/
+public class ChildEventList<T> {
+
+    private static final String TAG = "CHILD_EVENT_LIST_TAG";
+
+    public interface Listener<T> {
+        void onListChanged(List<T> items);
+    }
+
+    private final Query query;
+    private final Class<T> type;
+
+    //keys and items in query order, same positions
+    private final ArrayList<String> keys = new ArrayList<>();
+    private final ArrayList<T> items = new ArrayList<>();
+
+    private Listener<T> listener;
+    private ChildEventListener childListener;
+
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private boolean publishPosted = false;
+
+    private final Runnable publishRunnable = new Runnable() {
+        @Override
+        public void run() {
+            publishPosted = false;
+            if (listener != null) {
+                listener.onListChanged(new ArrayList<>(items));
+            }
+        }
+    };
+
+    public ChildEventList(Query query, Class<T> type) {
+        this.query = query;
+        this.type = type;
+    }
+
+    public void start(Listener<T> listener) {
+        this.listener = listener;
+        if (childListener != null) {
+            return;
+        }
+        childListener = new ChildEventListener() {
+            @Override
+            public void onChildAdded(@NonNull DataSnapshot snapshot, String previousChildName) {
+                insertAfter(previousChildName, snapshot);
+                publish();
+            }
+
+            @Override
+            public void onChildChanged(@NonNull DataSnapshot snapshot, String previousChildName) {
+                int index = keys.indexOf(snapshot.getKey());
+                if (index >= 0) {
+                    items.set(index, snapshot.getValue(type));
+                    publish();
+                }
+            }
+
+            @Override
+            public void onChildRemoved(@NonNull DataSnapshot snapshot) {
+                int index = keys.indexOf(snapshot.getKey());
+                if (index >= 0) {
+                    keys.remove(index);
+                    items.remove(index);
+                    publish();
+                }
+            }
+
+            @Override
+            public void onChildMoved(@NonNull DataSnapshot snapshot, String previousChildName) {
+                //e.g. view count of a most viewed book changed its rank
+                int index = keys.indexOf(snapshot.getKey());
+                if (index >= 0) {
+                    keys.remove(index);
+                    items.remove(index);
+                }
+                insertAfter(previousChildName, snapshot);
+                publish();
+            }
+
+            @Override
+            public void onCancelled(@NonNull DatabaseError error) {
+                Log.d(TAG, "onCancelled: " + error.getMessage());
+            }
+        };
+        query.addChildEventListener(childListener);
+    }
+
+    public void stop() {
+        listener = null;
+        handler.removeCallbacks(publishRunnable);
+        publishPosted = false;
+        if (childListener != null) {
+            query.removeEventListener(childListener);
+            childListener = null;
+        }
+        keys.clear();
+        items.clear();
+    }
+
+    private void insertAfter(String previousChildName, DataSnapshot snapshot) {
+        //previous child null means first in query order
+        int index = previousChildName == null ? 0 : keys.indexOf(previousChildName) + 1;
+        keys.add(index, snapshot.getKey());
+        items.add(index, snapshot.getValue(type));
+    }
+
+    private void publish() {
+        if (!publishPosted) {
+            publishPosted = true;
+            handler.post(publishRunnable);
+        }
+    }
+}
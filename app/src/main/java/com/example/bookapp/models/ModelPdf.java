@@ -2,8 +2,11 @@ package com.example.bookapp.models;
 
 public class ModelPdf {
     //variables
-    String uid, id, title, description, categoryId, url;
+    String uid, id, title, description, categoryId, url, coverUrl, coverUrlLarge;
     long timestamp, viewsCount, downloadsCount;
+    //read from the pdf at upload, 0 for books uploaded before they were stored
+    long sizeBytes;
+    int pageCount;
     boolean favorite;
 
     //empty constructor, required for firebase
@@ -73,6 +76,22 @@ public class ModelPdf {
         this.url = url;
     }
 
+    public String getCoverUrl() {
+        return coverUrl;
+    }
+
+    public void setCoverUrl(String coverUrl) {
+        this.coverUrl = coverUrl;
+    }
+
+    public String getCoverUrlLarge() {
+        return coverUrlLarge;
+    }
+
+    public void setCoverUrlLarge(String coverUrlLarge) {
+        this.coverUrlLarge = coverUrlLarge;
+    }
+
     public long getTimestamp() {
         return timestamp;
     }
@@ -97,6 +116,22 @@ public class ModelPdf {
         this.downloadsCount = downloadsCount;
     }
 
+    public long getSizeBytes() {
+        return sizeBytes;
+    }
+
+    public void setSizeBytes(long sizeBytes) {
+        this.sizeBytes = sizeBytes;
+    }
+
+    public int getPageCount() {
+        return pageCount;
+    }
+
+    public void setPageCount(int pageCount) {
+        this.pageCount = pageCount;
+    }
+
     public boolean isFavorite() {
         return favorite;
     }
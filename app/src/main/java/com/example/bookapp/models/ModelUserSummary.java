@@ -0,0 +1,27 @@
+package com.example.bookapp.models;
+
+public class ModelUserSummary {
+
+    //variables, just what comment rows show of a user
+    String uid, name, profileImage;
+
+    //constructor with all params
+    public ModelUserSummary(String uid, String name, String profileImage) {
+        this.uid = uid;
+        this.name = name;
+        this.profileImage = profileImage;
+    }
+
+    /*--Getters--*/
+    public String getUid() {
+        return uid;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getProfileImage() {
+        return profileImage;
+    }
+}
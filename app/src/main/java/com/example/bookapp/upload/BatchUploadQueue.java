@@ -0,0 +1,287 @@
+package com.example.bookapp.upload;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.google.firebase.auth.FirebaseAuth;
+import com.google.firebase.storage.FirebaseStorage;
+import com.google.firebase.storage.StorageReference;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+
+/*Persistent queue of book uploads, for adding many books at once
+* - at most maxConcurrent pdfs upload at the same time, the rest wait in the queue
+* - Books record of each pdf is written as soon as that pdf landed, not at the end of the batch
+* - queue is saved, uploads left by process death start again on next app start and resume their sessions
+* - a failed upload is queued again after a delay that doubles with every attempt, so a flaky network doesn't use up its attempts at once
+* - only touched on main thread, firebase callbacks are delivered there*/
+public class BatchUploadQueue {
+
+    private static final String TAG = "BATCH_UPLOAD_TAG";
+
+    private static final String PREFS = "batch_upload_queue";
+
+    //a failed upload is queued again until it failed this many times
+    private static final int MAX_ATTEMPTS = 3;
+    //delay before second attempt, doubled for each later one
+    private static final long RETRY_DELAY_MS = 5 * 1000; //5 seconds
+
+    public interface Listener {
+        //bytesPerSecond is aggregate throughput of all uploads of the batch
+        void onBatchProgress(int done, int failed, int total, long bytesPerSecond);
+    }
+
+    private static class Item {
+        long timestamp;
+        Uri fileUri;
+        String title, description, categoryId;
+        //upload session to resume and bytes it had confirmed
+        Uri sessionUri;
+        long confirmedBytes;
+        int attempts;
+        //bytes of the file storage has, to count only newly sent ones in throughput
+        long sentBytes;
+    }
+
+    private static BatchUploadQueue instance;
+
+    private final Context context;
+    private final int maxConcurrent;
+
+    private final ArrayList<Item> waiting = new ArrayList<>();
+    private final ArrayList<Item> running = new ArrayList<>();
+    //failed ones waiting for their retry delay, saved with the queue
+    private final ArrayList<Item> retrying = new ArrayList<>();
+
+    private final Handler handler = new Handler(Looper.getMainLooper());
+
+    //progress of current batch, reset when queue runs empty
+    private int doneCount = 0;
+    private int failedCount = 0;
+    private int totalCount = 0;
+    private long batchBytes = 0;
+    private long batchStartTime = 0;
+
+    //book ids are timestamps, books queued in same millisecond still get different ones
+    private long lastTimestamp = 0;
+
+    private Listener listener;
+
+    private BatchUploadQueue(Context context, int maxConcurrent) {
+        this.context = context;
+        this.maxConcurrent = maxConcurrent;
+        load();
+    }
+
+    public static synchronized void init(Context context, int maxConcurrent) {
+        if (instance == null) {
+            instance = new BatchUploadQueue(context.getApplicationContext(), maxConcurrent);
+            //uploads need a signed in admin, otherwise they wait for next enqueue
+            if (FirebaseAuth.getInstance().getCurrentUser() != null) {
+                instance.pump();
+            }
+        }
+    }
+
+    public static BatchUploadQueue getInstance() {
+        return instance;
+    }
+
+    public void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    public void enqueue(Uri fileUri, String title, String description, String categoryId) {
+        Item item = new Item();
+        long now = System.currentTimeMillis();
+        lastTimestamp = Math.max(now, lastTimestamp + 1);
+        item.timestamp = lastTimestamp;
+        item.fileUri = fileUri;
+        item.title = title;
+        item.description = description;
+        item.categoryId = categoryId;
+        waiting.add(item);
+        totalCount++;
+        save();
+        Log.d(TAG, "enqueue: " + title + ", " + waiting.size() + " waiting, " + running.size() + " running");
+        pump();
+    }
+
+    private void pump() {
+        if (batchStartTime == 0 && !waiting.isEmpty()) {
+            batchStartTime = SystemClock.elapsedRealtime();
+        }
+        while (running.size() < maxConcurrent && !waiting.isEmpty()) {
+            Item item = waiting.remove(0);
+            running.add(item);
+            startItem(item);
+        }
+    }
+
+    private void startItem(Item item) {
+        Log.d(TAG, "startItem: uploading " + item.title + ", attempt " + (item.attempts + 1));
+        //session this attempt resumes, null for a new upload
+        Uri resumedSessionUri = item.sessionUri;
+        long resumedBytes = item.confirmedBytes;
+        //bytes storage already has are not sent again
+        item.sentBytes = resumedBytes;
+
+        StorageReference reference = FirebaseStorage.getInstance().getReference("Books/" + item.timestamp);
+        BookRecordWriter recordWriter = new BookRecordWriter(context, item.fileUri, item.timestamp, item.title, item.description, item.categoryId);
+        new UploadPipeline(reference, item.fileUri, recordWriter, new UploadPipeline.Callback() {
+            @Override
+            public void onStage(UploadPipeline.Stage stage) {
+
+            }
+
+            @Override
+            public void onProgress(long bytesTransferred, long totalBytes) {
+                if (bytesTransferred > item.sentBytes) {
+                    batchBytes += bytesTransferred - item.sentBytes;
+                    item.sentBytes = bytesTransferred;
+                }
+                notifyListener();
+            }
+
+            @Override
+            public void onSuccess(String downloadUrl) {
+                Log.d(TAG, "onSuccess: " + item.title + " added");
+                doneCount++;
+                finishItem(item);
+            }
+
+            @Override
+            public void onFailure(UploadPipeline.Stage stage, Exception e) {
+                Log.d(TAG, "onFailure: " + item.title + " failed in " + stage + " due to " + e.getMessage());
+                item.attempts++;
+                if (resumedSessionUri != null && resumedSessionUri.equals(item.sessionUri) && item.confirmedBytes == resumedBytes) {
+                    //resumed session was rejected without any progress, next attempt starts over
+                    item.sessionUri = null;
+                    item.confirmedBytes = 0;
+                }
+                if (item.attempts < MAX_ATTEMPTS) {
+                    running.remove(item);
+                    retryLater(item);
+                    pump();
+                } else {
+                    failedCount++;
+                    finishItem(item);
+                }
+            }
+        }).setSessionListener(new UploadPipeline.SessionListener() {
+            @Override
+            public void onSession(Uri sessionUri, long confirmedBytes, long totalBytes) {
+                item.sessionUri = sessionUri;
+                item.confirmedBytes = confirmedBytes;
+                save();
+            }
+        }).resumeFrom(resumedSessionUri, resumedBytes).start();
+    }
+
+    private void retryLater(Item item) {
+        long delay = RETRY_DELAY_MS << (item.attempts - 1);
+        Log.d(TAG, "retryLater: " + item.title + " is tried again in " + delay + " ms");
+        retrying.add(item);
+        save();
+        handler.postDelayed(new Runnable() {
+            @Override
+            public void run() {
+                retrying.remove(item);
+                waiting.add(item);
+                save();
+                pump();
+            }
+        }, delay);
+    }
+
+    private void finishItem(Item item) {
+        running.remove(item);
+        save();
+        notifyListener();
+        if (running.isEmpty() && waiting.isEmpty() && retrying.isEmpty()) {
+            Log.d(TAG, "finishItem: batch done, " + doneCount + " added, " + failedCount + " failed, " + batchBytes + " bytes at " + getBytesPerSecond() + " bytes/s");
+            doneCount = 0;
+            failedCount = 0;
+            totalCount = 0;
+            batchBytes = 0;
+            batchStartTime = 0;
+        } else {
+            pump();
+        }
+    }
+
+    private void notifyListener() {
+        if (listener != null) {
+            listener.onBatchProgress(doneCount, failedCount, totalCount, getBytesPerSecond());
+        }
+    }
+
+    private long getBytesPerSecond() {
+        long elapsed = SystemClock.elapsedRealtime() - batchStartTime;
+        return batchStartTime == 0 || elapsed <= 0 ? 0 : batchBytes * 1000 / elapsed;
+    }
+
+    /*---Persistence---*/
+    private void load() {
+        SharedPreferences prefs = context.getSharedPreferences(PREFS, Context.MODE_PRIVATE);
+        try {
+            JSONArray items = new JSONArray(prefs.getString("items", "[]"));
+            for (int i = 0; i < items.length(); i++) {
+                JSONObject json = items.getJSONObject(i);
+                Item item = new Item();
+                item.timestamp = json.getLong("timestamp");
+                item.fileUri = Uri.parse(json.getString("fileUri"));
+                item.title = json.getString("title");
+                item.description = json.getString("description");
+                item.categoryId = json.getString("categoryId");
+                String sessionUri = json.optString("sessionUri", "");
+                item.sessionUri = sessionUri.isEmpty() ? null : Uri.parse(sessionUri);
+                item.confirmedBytes = json.optLong("confirmedBytes", 0);
+                item.attempts = json.optInt("attempts", 0);
+                waiting.add(item);
+                lastTimestamp = Math.max(lastTimestamp, item.timestamp);
+            }
+        } catch (JSONException e) {
+            Log.d(TAG, "load: failed to read queue due to " + e.getMessage());
+        }
+        totalCount = waiting.size();
+        Log.d(TAG, "load: " + waiting.size() + " uploads left from last run");
+    }
+
+    private void save() {
+        JSONArray items = new JSONArray();
+        try {
+            //running ones first, they were started first
+            ArrayList<Item> all = new ArrayList<>(running);
+            all.addAll(waiting);
+            all.addAll(retrying);
+            for (Item item : all) {
+                JSONObject json = new JSONObject();
+                json.put("timestamp", item.timestamp);
+                json.put("fileUri", item.fileUri.toString());
+                json.put("title", item.title);
+                json.put("description", item.description);
+                json.put("categoryId", item.categoryId);
+                json.put("sessionUri", item.sessionUri == null ? "" : item.sessionUri.toString());
+                json.put("confirmedBytes", item.confirmedBytes);
+                json.put("attempts", item.attempts);
+                items.put(json);
+            }
+        } catch (JSONException e) {
+            Log.d(TAG, "save: failed to write queue due to " + e.getMessage());
+            return;
+        }
+        context.getSharedPreferences(PREFS, Context.MODE_PRIVATE).edit()
+                .putString("items", items.toString())
+                .apply();
+    }
+}
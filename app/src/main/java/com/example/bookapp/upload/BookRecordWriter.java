@@ -0,0 +1,173 @@
+package com.example.bookapp.upload;
+
+import android.content.Context;
+import android.net.Uri;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+
+import com.google.android.gms.tasks.Continuation;
+import com.google.android.gms.tasks.OnCompleteListener;
+import com.google.android.gms.tasks.OnFailureListener;
+import com.google.android.gms.tasks.OnSuccessListener;
+import com.google.android.gms.tasks.Task;
+import com.google.android.gms.tasks.TaskCompletionSource;
+import com.google.android.gms.tasks.Tasks;
+import com.google.firebase.auth.FirebaseAuth;
+import com.google.firebase.database.DataSnapshot;
+import com.google.firebase.database.DatabaseError;
+import com.google.firebase.database.DatabaseReference;
+import com.google.firebase.database.FirebaseDatabase;
+import com.google.firebase.database.ValueEventListener;
+import com.google.firebase.storage.FirebaseStorage;
+import com.google.firebase.storage.StorageReference;
+import com.google.firebase.storage.UploadTask;
+
+import java.util.HashMap;
+import java.util.List;
+
+/*Last stage of a book upload: render and upload covers of the pdf, then write its Books record with page count and size
+* - written once per upload: when the record of this book id already exists, e.g. written by an attempt that was
+*   killed before it could forget the upload, covers are not uploaded again and the record is left as it is*/
+public class BookRecordWriter implements UploadPipeline.RecordWriter {
+
+    private static final String TAG = "BOOK_RECORD_TAG";
+
+    private final Context context;
+    private final Uri pdfUri;
+    private final long timestamp;
+    private final String title, description, categoryId;
+
+    public BookRecordWriter(Context context, Uri pdfUri, long timestamp, String title, String description, String categoryId) {
+        this.context = context.getApplicationContext();
+        this.pdfUri = pdfUri;
+        this.timestamp = timestamp;
+        this.title = title;
+        this.description = description;
+        this.categoryId = categoryId;
+    }
+
+    @Override
+    public Task<Void> write(String uploadedPdfUrl) {
+        //completes when pdf info is written, with or without covers
+        TaskCompletionSource<Void> infoWritten = new TaskCompletionSource<>();
+
+        //Step 0: Check if an earlier attempt of this upload already wrote the record
+        FirebaseDatabase.getInstance().getReference("Books").child("" + timestamp).child("url")
+                .addListenerForSingleValueEvent(new ValueEventListener() {
+                    @Override
+                    public void onDataChange(@NonNull DataSnapshot snapshot) {
+                        if (snapshot.exists()) {
+                            Log.d(TAG, "onDataChange: record of " + title + " already written, skipping");
+                            infoWritten.setResult(null);
+                        } else {
+                            writeWithCovers(uploadedPdfUrl, infoWritten);
+                        }
+                    }
+
+                    @Override
+                    public void onCancelled(@NonNull DatabaseError error) {
+                        infoWritten.setException(error.toException());
+                    }
+                });
+        return infoWritten.getTask();
+    }
+
+    private void writeWithCovers(String uploadedPdfUrl, TaskCompletionSource<Void> infoWritten) {
+        //Step 1: Render first page of pdf as cover and upload it next to the pdf
+        Log.d(TAG, "writeWithCovers: rendering covers of " + title);
+
+        CoverRenderer.render(context, pdfUri, new CoverRenderer.Callback() {
+            @Override
+            public void onRendered(byte[] smallCover, byte[] largeCover, int pageCount, long sizeBytes) {
+                if (smallCover == null || largeCover == null) {
+                    //book is still usable without cover, lists will render its first page themselves
+                    Log.d(TAG, "onRendered: no cover, skipping cover upload");
+                    completeWith(uploadPdfInfoToDb(uploadedPdfUrl, "", "", pageCount, sizeBytes), infoWritten);
+                    return;
+                }
+
+                //path of covers in firebase storage, e.g. Books/1634567890_cover_small
+                Task<Uri> smallTask = uploadCover("Books/" + timestamp + "_cover_small", smallCover);
+                Task<Uri> largeTask = uploadCover("Books/" + timestamp + "_cover_large", largeCover);
+                Tasks.<Uri>whenAllSuccess(smallTask, largeTask)
+                        .addOnSuccessListener(new OnSuccessListener<List<Uri>>() {
+                            @Override
+                            public void onSuccess(List<Uri> coverUrls) {
+                                Log.d(TAG, "onSuccess: Covers uploaded to storage...");
+                                completeWith(uploadPdfInfoToDb(uploadedPdfUrl, "" + coverUrls.get(0), "" + coverUrls.get(1), pageCount, sizeBytes), infoWritten);
+                            }
+                        })
+                        .addOnFailureListener(new OnFailureListener() {
+                            @Override
+                            public void onFailure(@NonNull Exception e) {
+                                Log.d(TAG, "onFailure: Cover upload failed due to " + e.getMessage());
+                                completeWith(uploadPdfInfoToDb(uploadedPdfUrl, "", "", pageCount, sizeBytes), infoWritten);
+                            }
+                        });
+            }
+        });
+    }
+
+    private static void completeWith(Task<Void> task, TaskCompletionSource<Void> source) {
+        task.addOnCompleteListener(new OnCompleteListener<Void>() {
+            @Override
+            public void onComplete(@NonNull Task<Void> task) {
+                if (task.isSuccessful()) {
+                    source.setResult(null);
+                } else {
+                    source.setException(task.getException());
+                }
+            }
+        });
+    }
+
+    //also used by the metadata backfill for books uploaded without cover
+    public static Task<Uri> uploadCover(String filePathAndName, byte[] cover) {
+        //upload cover bytes, then resolve its download url
+        StorageReference reference = FirebaseStorage.getInstance().getReference(filePathAndName);
+        return reference.putBytes(cover)
+                .continueWithTask(new Continuation<UploadTask.TaskSnapshot, Task<Uri>>() {
+                    @Override
+                    public Task<Uri> then(@NonNull Task<UploadTask.TaskSnapshot> task) throws Exception {
+                        if (!task.isSuccessful()) {
+                            throw task.getException();
+                        }
+                        return reference.getDownloadUrl();
+                    }
+                });
+    }
+
+    private Task<Void> uploadPdfInfoToDb(String uploadedPdfUrl, String coverUrl, String coverUrlLarge, int pageCount, long sizeBytes) {
+        //Step 2: Uploading pdf into firebase db
+        Log.d(TAG, "uploadPdfInfoToDb: Uploading pdf into firebase db...");
+
+        String uid = FirebaseAuth.getInstance().getUid();
+
+        //setup data to upload also add view count, download count while adding pdf/book
+        HashMap<String, Object> hashMap = new HashMap<>();
+        hashMap.put("uid", "" + uid);
+        hashMap.put("id", "" + timestamp);
+        hashMap.put("title", "" + title);
+        hashMap.put("description", "" + description);
+        hashMap.put("categoryId", "" + categoryId);
+        hashMap.put("url", "" + uploadedPdfUrl);
+        hashMap.put("coverUrl", "" + coverUrl);
+        hashMap.put("coverUrlLarge", "" + coverUrlLarge);
+        hashMap.put("timestamp", timestamp);
+        hashMap.put("viewsCount", 0);
+        hashMap.put("downloadsCount", 0);
+        //read from local file, so rows and detail page don't ask storage; left out when unknown
+        if (pageCount > 0) {
+            hashMap.put("pageCount", pageCount);
+        }
+        if (sizeBytes > 0) {
+            hashMap.put("sizeBytes", sizeBytes);
+        }
+
+        //db reference, result is reported by the upload pipeline
+        DatabaseReference ref = FirebaseDatabase.getInstance().getReference("Books");
+        return ref.child("" + timestamp)
+                .setValue(hashMap);
+    }
+}
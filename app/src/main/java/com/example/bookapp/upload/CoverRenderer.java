@@ -0,0 +1,111 @@
+package com.example.bookapp.upload;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.Color;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.ParcelFileDescriptor;
+import android.util.Log;
+
+import com.shockwave.pdfium.PdfDocument;
+import com.shockwave.pdfium.PdfiumCore;
+
+import java.io.ByteArrayOutputStream;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/*Renders first page of a local pdf into small jpeg covers, so lists don't need to render pdfs themselves
+* page count and file size are read from the same open document, so lists and detail page don't need storage for them*/
+public class CoverRenderer {
+
+    private static final String TAG = "COVER_RENDERER_TAG";
+
+    //cover widths in px, small one for book rows, large one for detail page
+    public static final int WIDTH_SMALL = 240;
+    public static final int WIDTH_LARGE = 720;
+
+    private static final int JPEG_QUALITY = 80;
+
+    private static final ExecutorService executor = Executors.newSingleThreadExecutor();
+    private static final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    public interface Callback {
+        //called on main thread, covers are null if pdf couldn't be rendered, pageCount and sizeBytes are 0 if unknown
+        void onRendered(byte[] smallCover, byte[] largeCover, int pageCount, long sizeBytes);
+    }
+
+    public static void render(Context context, Uri pdfUri, Callback callback) {
+        Context appContext = context.getApplicationContext();
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                byte[] small = null, large = null;
+                int pages = 0;
+                long size = 0;
+                ParcelFileDescriptor fd = null;
+                PdfiumCore pdfiumCore = null;
+                PdfDocument document = null;
+                try {
+                    long startTime = System.currentTimeMillis();
+                    fd = appContext.getContentResolver().openFileDescriptor(pdfUri, "r");
+                    size = Math.max(0, fd.getStatSize()); //-1 if provider doesn't know it
+                    pdfiumCore = new PdfiumCore(appContext);
+                    document = pdfiumCore.newDocument(fd);
+                    pages = pdfiumCore.getPageCount(document);
+                    small = renderFirstPage(pdfiumCore, document, WIDTH_SMALL);
+                    large = renderFirstPage(pdfiumCore, document, WIDTH_LARGE);
+                    Log.d(TAG, "render: rendered covers in " + (System.currentTimeMillis() - startTime) + " ms, "
+                            + small.length + " + " + large.length + " bytes");
+                } catch (Exception e) {
+                    Log.d(TAG, "render: failed to render cover due to " + e.getMessage());
+                    small = null;
+                    large = null;
+                } finally {
+                    //also when pdf is corrupt or encrypted, otherwise fd stays open
+                    closeQuietly(pdfiumCore, document, fd);
+                }
+
+                byte[] smallCover = small, largeCover = large;
+                int pageCount = pages;
+                long sizeBytes = size;
+                mainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        callback.onRendered(smallCover, largeCover, pageCount, sizeBytes);
+                    }
+                });
+            }
+        });
+    }
+
+    //closing the document also closes fd, fd is closed alone when no document could be opened from it
+    private static void closeQuietly(PdfiumCore pdfiumCore, PdfDocument document, ParcelFileDescriptor fd) {
+        try {
+            if (document != null) {
+                pdfiumCore.closeDocument(document);
+            } else if (fd != null) {
+                fd.close();
+            }
+        } catch (Exception e) {
+            Log.d(TAG, "closeQuietly: failed to close pdf due to " + e.getMessage());
+        }
+    }
+
+    static byte[] renderFirstPage(PdfiumCore pdfiumCore, PdfDocument document, int width) {
+        pdfiumCore.openPage(document, 0);
+        int pageWidth = pdfiumCore.getPageWidthPoint(document, 0);
+        int pageHeight = pdfiumCore.getPageHeightPoint(document, 0);
+        int height = Math.max(1, (int) ((long) width * pageHeight / Math.max(1, pageWidth)));
+
+        Bitmap bitmap = Bitmap.createBitmap(width, height, Bitmap.Config.RGB_565);
+        bitmap.eraseColor(Color.WHITE);
+        pdfiumCore.renderPageBitmap(document, bitmap, 0, 0, 0, width, height);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        bitmap.compress(Bitmap.CompressFormat.JPEG, JPEG_QUALITY, out);
+        bitmap.recycle();
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,128 @@
+package com.example.bookapp.upload;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.net.Uri;
+
+/*Book upload that has not finished yet, persisted so it survives activity and process death
+* storage keeps the uploaded chunks for a session, its uri lets the next attempt continue after the last confirmed chunk*/
+public class PendingUpload {
+
+    private static final String PREFS = "pending_upload";
+
+    //book id, also name of the pdf in storage
+    private final long timestamp;
+    private final Uri fileUri;
+
+    //book info typed by user, restored with the upload
+    private final String title, description, categoryId, categoryTitle;
+
+    //upload session in storage, null until storage has started one
+    private Uri sessionUri;
+    private long confirmedBytes;
+    private long totalBytes;
+
+    public PendingUpload(long timestamp, Uri fileUri, String title, String description, String categoryId, String categoryTitle) {
+        this.timestamp = timestamp;
+        this.fileUri = fileUri;
+        this.title = title;
+        this.description = description;
+        this.categoryId = categoryId;
+        this.categoryTitle = categoryTitle;
+    }
+
+    //same upload with book info edited by user
+    public PendingUpload withInfo(String title, String description, String categoryId, String categoryTitle) {
+        PendingUpload pendingUpload = new PendingUpload(timestamp, fileUri, title, description, categoryId, categoryTitle);
+        pendingUpload.sessionUri = sessionUri;
+        pendingUpload.confirmedBytes = confirmedBytes;
+        pendingUpload.totalBytes = totalBytes;
+        return pendingUpload;
+    }
+
+    public static PendingUpload load(Context context) {
+        SharedPreferences prefs = context.getSharedPreferences(PREFS, Context.MODE_PRIVATE);
+        String fileUri = prefs.getString("fileUri", null);
+        if (fileUri == null) {
+            return null;
+        }
+        PendingUpload pendingUpload = new PendingUpload(
+                prefs.getLong("timestamp", 0),
+                Uri.parse(fileUri),
+                prefs.getString("title", ""),
+                prefs.getString("description", ""),
+                prefs.getString("categoryId", ""),
+                prefs.getString("categoryTitle", ""));
+        String sessionUri = prefs.getString("sessionUri", null);
+        pendingUpload.sessionUri = sessionUri == null ? null : Uri.parse(sessionUri);
+        pendingUpload.confirmedBytes = prefs.getLong("confirmedBytes", 0);
+        pendingUpload.totalBytes = prefs.getLong("totalBytes", 0);
+        return pendingUpload;
+    }
+
+    public void save(Context context) {
+        context.getSharedPreferences(PREFS, Context.MODE_PRIVATE).edit()
+                .putLong("timestamp", timestamp)
+                .putString("fileUri", fileUri.toString())
+                .putString("title", title)
+                .putString("description", description)
+                .putString("categoryId", categoryId)
+                .putString("categoryTitle", categoryTitle)
+                .putString("sessionUri", sessionUri == null ? null : sessionUri.toString())
+                .putLong("confirmedBytes", confirmedBytes)
+                .putLong("totalBytes", totalBytes)
+                .apply();
+    }
+
+    public void saveSession(Context context, Uri sessionUri, long confirmedBytes, long totalBytes) {
+        this.sessionUri = sessionUri;
+        this.confirmedBytes = confirmedBytes;
+        this.totalBytes = totalBytes;
+        save(context);
+    }
+
+    //session expired or was rejected, next attempt starts from zero
+    public void clearSession(Context context) {
+        saveSession(context, null, 0, totalBytes);
+    }
+
+    public static void clear(Context context) {
+        context.getSharedPreferences(PREFS, Context.MODE_PRIVATE).edit().clear().apply();
+    }
+
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    public Uri getFileUri() {
+        return fileUri;
+    }
+
+    public String getTitle() {
+        return title;
+    }
+
+    public String getDescription() {
+        return description;
+    }
+
+    public String getCategoryId() {
+        return categoryId;
+    }
+
+    public String getCategoryTitle() {
+        return categoryTitle;
+    }
+
+    public Uri getSessionUri() {
+        return sessionUri;
+    }
+
+    public long getConfirmedBytes() {
+        return confirmedBytes;
+    }
+
+    public long getTotalBytes() {
+        return totalBytes;
+    }
+}
@@ -0,0 +1,253 @@
+package com.example.bookapp.upload;
+
+import android.net.Uri;
+import android.os.SystemClock;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+
+import com.google.android.gms.tasks.OnFailureListener;
+import com.google.android.gms.tasks.OnSuccessListener;
+import com.google.android.gms.tasks.Task;
+import com.google.firebase.storage.OnProgressListener;
+import com.google.firebase.storage.StorageMetadata;
+import com.google.firebase.storage.StorageReference;
+import com.google.firebase.storage.UploadTask;
+
+import java.util.List;
+
+/*Upload of one file in three asynchronous stages: upload to storage -> resolve download url -> write db record
+* - nothing waits on a task, every stage starts from the callback of the previous one
+* - callbacks run on main thread
+* - time of each stage is logged
+* - cancel() stops the upload, or stops the next stage from starting
+* - setCallback() hands the running pipeline to a new owner, e.g. a recreated activity, stages keep running
+* - storage uploads the file in chunks within a session, an interrupted session can be resumed after its last confirmed chunk*/
+public class UploadPipeline {
+
+    private static final String TAG = "UPLOAD_PIPELINE_TAG";
+
+    //session progress is reported again after this many more bytes, not on every chunk
+    private static final long SESSION_SAVE_BYTES = 1024 * 1024; //1MB
+
+    public enum Stage {
+        UPLOAD, RESOLVE_URL, WRITE_RECORD, DONE
+    }
+
+    public interface RecordWriter {
+        //last stage, write db record pointing at the uploaded file
+        Task<Void> write(String downloadUrl);
+    }
+
+    public interface SessionListener {
+        //save these to resume the upload after process death
+        void onSession(Uri sessionUri, long confirmedBytes, long totalBytes);
+    }
+
+    public interface Callback {
+        void onStage(Stage stage);
+
+        void onProgress(long bytesTransferred, long totalBytes);
+
+        void onSuccess(String downloadUrl);
+
+        void onFailure(Stage stage, Exception e);
+    }
+
+    private final StorageReference reference;
+    private final Uri fileUri;
+    private final RecordWriter recordWriter;
+    private Callback callback;
+    private SessionListener sessionListener;
+
+    //session of an earlier attempt to continue, and bytes that attempt had confirmed
+    private Uri resumeSessionUri;
+    private long resumeConfirmedBytes;
+
+    //session saves, resent bytes and throughput of this attempt
+    private UploadSessionTracker<Uri> sessionTracker;
+
+    private Stage stage;
+    private boolean cancelled = false;
+    private boolean failed = false;
+    private UploadTask uploadTask;
+
+    //start time of the pipeline and of the current stage
+    private long startTime;
+    private long stageStartTime;
+
+    public UploadPipeline(StorageReference reference, Uri fileUri, RecordWriter recordWriter, Callback callback) {
+        this.reference = reference;
+        this.fileUri = fileUri;
+        this.recordWriter = recordWriter;
+        this.callback = callback;
+    }
+
+    //continue an interrupted upload instead of starting from zero, call before start()
+    public UploadPipeline resumeFrom(Uri sessionUri, long confirmedBytes) {
+        this.resumeSessionUri = sessionUri;
+        this.resumeConfirmedBytes = confirmedBytes;
+        return this;
+    }
+
+    public UploadPipeline setSessionListener(SessionListener sessionListener) {
+        this.sessionListener = sessionListener;
+        return this;
+    }
+
+    public UploadPipeline start() {
+        startTime = SystemClock.elapsedRealtime();
+        enterStage(Stage.UPLOAD);
+        sessionTracker = new UploadSessionTracker<>(sessionListener == null ? null : new UploadSessionTracker.Store<Uri>() {
+            @Override
+            public void save(Uri session, long confirmedBytes, long totalBytes) {
+                sessionListener.onSession(session, confirmedBytes, totalBytes);
+            }
+        }, SESSION_SAVE_BYTES, resumeSessionUri == null ? -1 : resumeConfirmedBytes);
+        sessionTracker.start(stageStartTime);
+
+        //Stage 1: upload file
+        List<UploadTask> activeTasks = reference.getActiveUploadTasks();
+        if (!activeTasks.isEmpty()) {
+            //activity was recreated while this process kept uploading, follow that upload
+            Log.d(TAG, "start: attaching to running upload of " + reference.getPath());
+            uploadTask = activeTasks.get(0);
+        } else if (resumeSessionUri != null) {
+            //storage continues after the last chunk it has confirmed for this session
+            Log.d(TAG, "start: resuming " + reference.getPath() + ", " + resumeConfirmedBytes + " bytes were confirmed");
+            uploadTask = reference.putFile(fileUri, new StorageMetadata.Builder().build(), resumeSessionUri);
+        } else {
+            uploadTask = reference.putFile(fileUri);
+        }
+        uploadTask.addOnProgressListener(new OnProgressListener<UploadTask.TaskSnapshot>() {
+                    @Override
+                    public void onProgress(@NonNull UploadTask.TaskSnapshot snapshot) {
+                        if (!cancelled) {
+                            onUploadProgress(snapshot);
+                            callback.onProgress(snapshot.getBytesTransferred(), snapshot.getTotalByteCount());
+                        }
+                    }
+                })
+                .addOnSuccessListener(new OnSuccessListener<UploadTask.TaskSnapshot>() {
+                    @Override
+                    public void onSuccess(UploadTask.TaskSnapshot taskSnapshot) {
+                        resolveUrl();
+                    }
+                })
+                .addOnFailureListener(new OnFailureListener() {
+                    @Override
+                    public void onFailure(@NonNull Exception e) {
+                        fail(e);
+                    }
+                });
+        return this;
+    }
+
+    public Stage getStage() {
+        return stage;
+    }
+
+    //false once done, failed or cancelled
+    public boolean isRunning() {
+        return !cancelled && !failed && stage != Stage.DONE;
+    }
+
+    //callbacks of the stages still to come go to callback, the previous one gets nothing more
+    public void setCallback(Callback callback) {
+        this.callback = callback;
+    }
+
+    //a record write already sent can't be taken back, cancelling then only drops the callbacks
+    public void cancel() {
+        if (cancelled || stage == Stage.DONE) {
+            return;
+        }
+        cancelled = true;
+        Log.d(TAG, "cancel: cancelled in stage " + stage + " of " + reference.getPath());
+        if (uploadTask != null && uploadTask.isInProgress()) {
+            uploadTask.cancel();
+        }
+    }
+
+    private void onUploadProgress(UploadTask.TaskSnapshot snapshot) {
+        boolean first = !sessionTracker.hasProgress();
+        sessionTracker.onProgress(snapshot.getUploadSessionUri(), snapshot.getBytesTransferred(), snapshot.getTotalByteCount(), SystemClock.elapsedRealtime());
+        if (first && sessionTracker.isResumed()) {
+            //bytes confirmed before interruption but not kept by storage are sent again
+            Log.d(TAG, "onUploadProgress: resumed at " + sessionTracker.getResumedAtBytes() + " of " + snapshot.getTotalByteCount() + " bytes, "
+                    + sessionTracker.getResentBytes() + " bytes resent");
+        }
+    }
+
+    private void resolveUrl() {
+        if (cancelled) {
+            return;
+        }
+        //throughput of this attempt, resumed uploads only count the bytes sent now
+        sessionTracker.finish(uploadTask.getSnapshot().getTotalByteCount(), SystemClock.elapsedRealtime());
+        Log.d(TAG, "resolveUrl: uploaded " + sessionTracker.getSentBytes() + " bytes at " + (sessionTracker.getBytesPerSecond() / 1024) + " KB/s"
+                + (sessionTracker.isResumed() ? ", " + sessionTracker.getResentBytes() + " bytes resent" : ""));
+        enterStage(Stage.RESOLVE_URL);
+
+        //Stage 2: get download url of uploaded file
+        reference.getDownloadUrl()
+                .addOnSuccessListener(new OnSuccessListener<Uri>() {
+                    @Override
+                    public void onSuccess(Uri uri) {
+                        writeRecord("" + uri);
+                    }
+                })
+                .addOnFailureListener(new OnFailureListener() {
+                    @Override
+                    public void onFailure(@NonNull Exception e) {
+                        fail(e);
+                    }
+                });
+    }
+
+    private void writeRecord(String downloadUrl) {
+        if (cancelled) {
+            return;
+        }
+        enterStage(Stage.WRITE_RECORD);
+
+        //Stage 3: write db record
+        recordWriter.write(downloadUrl)
+                .addOnSuccessListener(new OnSuccessListener<Void>() {
+                    @Override
+                    public void onSuccess(Void unused) {
+                        if (cancelled) {
+                            return;
+                        }
+                        enterStage(Stage.DONE);
+                        Log.d(TAG, "onSuccess: " + reference.getPath() + " done in " + (SystemClock.elapsedRealtime() - startTime) + " ms");
+                        callback.onSuccess(downloadUrl);
+                    }
+                })
+                .addOnFailureListener(new OnFailureListener() {
+                    @Override
+                    public void onFailure(@NonNull Exception e) {
+                        fail(e);
+                    }
+                });
+    }
+
+    private void fail(Exception e) {
+        if (cancelled) {
+            return;
+        }
+        failed = true;
+        Log.d(TAG, "fail: stage " + stage + " of " + reference.getPath() + " failed after " + (SystemClock.elapsedRealtime() - stageStartTime) + " ms due to " + e.getMessage());
+        callback.onFailure(stage, e);
+    }
+
+    private void enterStage(Stage next) {
+        long now = SystemClock.elapsedRealtime();
+        if (stage != null) {
+            Log.d(TAG, "enterStage: " + stage + " of " + reference.getPath() + " took " + (now - stageStartTime) + " ms");
+        }
+        stage = next;
+        stageStartTime = now;
+        callback.onStage(next);
+    }
+}
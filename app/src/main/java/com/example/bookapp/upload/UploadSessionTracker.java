@@ -0,0 +1,93 @@
+package com.example.bookapp.upload;
+
+/*Progress of one upload attempt within a storage session
+* - free of firebase and android classes, so resuming runs in host unit tests against a storage stand-in
+* - session is handed to store at first progress, then after every saveEveryBytes more confirmed bytes and at the end,
+*   so an attempt that fails after its first chunk can always be resumed
+* - bytes an earlier attempt had confirmed but storage didn't keep are counted as resent
+* - throughput only counts bytes sent by this attempt*/
+public class UploadSessionTracker<S> {
+
+    public interface Store<S> {
+        //save these to resume the upload after process death
+        void save(S session, long confirmedBytes, long totalBytes);
+    }
+
+    private final Store<S> store;
+    private final long saveEveryBytes;
+    //bytes confirmed by the attempt this one resumes, -1 for a new upload
+    private final long resumeConfirmedBytes;
+
+    //bytes confirmed at last save and at first progress of this attempt, -1 until known
+    private long savedBytes = -1;
+    private long firstProgressBytes = -1;
+    private long lastBytes = 0;
+    private long startTimeMs;
+    private long lastTimeMs;
+
+    public UploadSessionTracker(Store<S> store, long saveEveryBytes, long resumeConfirmedBytes) {
+        this.store = store;
+        this.saveEveryBytes = saveEveryBytes;
+        this.resumeConfirmedBytes = resumeConfirmedBytes;
+    }
+
+    public void start(long nowMs) {
+        startTimeMs = nowMs;
+        lastTimeMs = nowMs;
+    }
+
+    //storage confirmed bytesTransferred of totalBytes, session is null until storage has started one
+    public void onProgress(S session, long bytesTransferred, long totalBytes, long nowMs) {
+        if (firstProgressBytes < 0) {
+            firstProgressBytes = bytesTransferred;
+        }
+        lastBytes = bytesTransferred;
+        lastTimeMs = nowMs;
+
+        if (store != null && session != null
+                && (savedBytes < 0 || bytesTransferred - savedBytes >= saveEveryBytes || bytesTransferred == totalBytes)) {
+            savedBytes = bytesTransferred;
+            store.save(session, bytesTransferred, totalBytes);
+        }
+    }
+
+    //storage has all totalBytes, e.g. without a progress for the last chunk
+    public void finish(long totalBytes, long nowMs) {
+        if (firstProgressBytes < 0) {
+            firstProgressBytes = 0;
+        }
+        lastBytes = totalBytes;
+        lastTimeMs = nowMs;
+    }
+
+    public boolean hasProgress() {
+        return firstProgressBytes >= 0;
+    }
+
+    public boolean isResumed() {
+        return resumeConfirmedBytes >= 0;
+    }
+
+    //storage continued at this offset, 0 until first progress
+    public long getResumedAtBytes() {
+        return Math.max(0, firstProgressBytes);
+    }
+
+    //bytes the earlier attempt had confirmed that are sent again by this one
+    public long getResentBytes() {
+        if (!isResumed() || firstProgressBytes < 0) {
+            return 0;
+        }
+        return Math.max(0, resumeConfirmedBytes - firstProgressBytes);
+    }
+
+    //bytes confirmed by this attempt
+    public long getSentBytes() {
+        return lastBytes - getResumedAtBytes();
+    }
+
+    public long getBytesPerSecond() {
+        long ms = Math.max(1, lastTimeMs - startTimeMs);
+        return getSentBytes() * 1000 / ms;
+    }
+}
@@ -0,0 +1,128 @@
+package com.example.bookapp.adapters;
+
+import androidx.recyclerview.widget.DiffUtil;
+import androidx.recyclerview.widget.ListUpdateCallback;
+
+import com.example.bookapp.models.ModelPdf;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Bind counts of book list updates with 1,000 books. Lists are fed the way {@link AdapterPdfUser} gets them:
+ * first list is inserted whole, every later one is diffed against the shown one with {@link BookDiffCallback},
+ * and each inserted or changed row is bound once.
+ */
+public class BookDiffCallbackTest {
+
+    private static final int BOOKS = 1000;
+
+    //rows a list update binds, moved rows keep their views
+    private static class BindCounter implements ListUpdateCallback {
+
+        int binds = 0;
+
+        @Override
+        public void onInserted(int position, int count) {
+            binds += count;
+        }
+
+        @Override
+        public void onRemoved(int position, int count) {
+        }
+
+        @Override
+        public void onMoved(int fromPosition, int toPosition) {
+        }
+
+        @Override
+        public void onChanged(int position, int count, Object payload) {
+            binds += count;
+        }
+    }
+
+    @Test
+    public void firstList_bindsEveryBook() {
+        assertEquals(BOOKS, submit(null, books(BOOKS)));
+    }
+
+    @Test
+    public void sameBooksLoadedAgain_bindsNothing() {
+        assertEquals(0, submit(books(BOOKS), books(BOOKS)));
+    }
+
+    @Test
+    public void countsChanged_bindsNothing() {
+        List<ModelPdf> newBooks = books(BOOKS);
+        for (ModelPdf book : newBooks) {
+            book.setViewsCount(book.getViewsCount() + 1);
+            book.setDownloadsCount(book.getDownloadsCount() + 1);
+        }
+
+        assertEquals(0, submit(books(BOOKS), newBooks));
+    }
+
+    @Test
+    public void oneTitleChanged_bindsOneBook() {
+        List<ModelPdf> newBooks = books(BOOKS);
+        newBooks.get(BOOKS / 2).setTitle("New title");
+
+        assertEquals(1, submit(books(BOOKS), newBooks));
+    }
+
+    @Test
+    public void nextPageLoaded_bindsOnlyNewPage() {
+        assertEquals(20, submit(books(BOOKS), books(BOOKS + 20)));
+    }
+
+    //rows bound when list shown goes from oldBooks to newBooks, null when nothing was shown yet
+    private static int submit(List<ModelPdf> oldBooks, List<ModelPdf> newBooks) {
+        BindCounter counter = new BindCounter();
+        if (oldBooks == null) {
+            counter.onInserted(0, newBooks.size());
+            return counter.binds;
+        }
+
+        BookDiffCallback itemCallback = new BookDiffCallback();
+        DiffUtil.calculateDiff(new DiffUtil.Callback() {
+            @Override
+            public int getOldListSize() {
+                return oldBooks.size();
+            }
+
+            @Override
+            public int getNewListSize() {
+                return newBooks.size();
+            }
+
+            @Override
+            public boolean areItemsTheSame(int oldItemPosition, int newItemPosition) {
+                return itemCallback.areItemsTheSame(oldBooks.get(oldItemPosition), newBooks.get(newItemPosition));
+            }
+
+            @Override
+            public boolean areContentsTheSame(int oldItemPosition, int newItemPosition) {
+                return itemCallback.areContentsTheSame(oldBooks.get(oldItemPosition), newBooks.get(newItemPosition));
+            }
+        }).dispatchUpdatesTo(counter);
+        return counter.binds;
+    }
+
+    //books ordered by id like the All tab, new objects on every call like every db load
+    private static List<ModelPdf> books(int count) {
+        List<ModelPdf> books = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            long timestamp = 1600000000000L + i;
+            ModelPdf book = new ModelPdf("uid", "" + timestamp, "Book " + i, "Description " + i, "category" + (i % 10),
+                    "https://example.com/" + timestamp + ".pdf", timestamp, i, i, false);
+            book.setCoverUrl("https://example.com/" + timestamp + ".jpg");
+            book.setSizeBytes(1024L * i);
+            books.add(book);
+        }
+        return books;
+    }
+}
@@ -0,0 +1,68 @@
+package com.example.bookapp.counters;
+
+import org.junit.Test;
+
+import java.math.BigDecimal;
+
+import static org.junit.Assert.*;
+
+/**
+ * {@link CounterValues#add}, what the count transactions write for the value a count node has: a missing count stays
+ * missing so a deleted book is not brought back, and counts stored as any number or as text are added to.
+ */
+public class CounterValuesTest {
+
+    @Test
+    public void add_missingCount_staysMissing() {
+        assertNull(CounterValues.add(null, 1));
+        assertNull(CounterValues.add(null, 0));
+        assertNull(CounterValues.add(null, -3));
+    }
+
+    @Test
+    public void add_long() {
+        assertEquals(Long.valueOf(42), CounterValues.add(41L, 1));
+        assertEquals(Long.valueOf(0), CounterValues.add(0L, 0));
+        assertEquals(Long.valueOf(3), CounterValues.add(5L, -2));
+        assertEquals(Long.valueOf(Long.MAX_VALUE), CounterValues.add(Long.MAX_VALUE - 1, 1));
+    }
+
+    @Test
+    public void add_nonLongNumbers() {
+        assertEquals(Long.valueOf(3), CounterValues.add(2, 1));
+        assertEquals(Long.valueOf(3), CounterValues.add((short) 2, 1));
+        //db returns whole numbers written as doubles as Double, fractions are dropped
+        assertEquals(Long.valueOf(3), CounterValues.add(2.0, 1));
+        assertEquals(Long.valueOf(3), CounterValues.add(2.9, 1));
+        assertEquals(Long.valueOf(3), CounterValues.add(2.5f, 1));
+        assertEquals(Long.valueOf(3), CounterValues.add(new BigDecimal("2"), 1));
+    }
+
+    @Test
+    public void add_text() {
+        //older records stored counts as text
+        assertEquals(Long.valueOf(3), CounterValues.add("2", 1));
+        assertEquals(Long.valueOf(3), CounterValues.add(" 2 ", 1));
+        //unreadable counts start again from zero, they are not left alone
+        assertEquals(Long.valueOf(1), CounterValues.add("N/A", 1));
+        assertEquals(Long.valueOf(1), CounterValues.add("", 1));
+        assertEquals(Long.valueOf(1), CounterValues.add(true, 1));
+    }
+
+    @Test
+    public void add_onOwnResult_countsEveryIncrement() {
+        //a transaction run again on the value it wrote, e.g. one increment after another on the same client
+        Object count = 0L;
+        for (int i = 0; i < 1000; i++) {
+            count = CounterValues.add(count, 1);
+            assertNotNull(count);
+        }
+        assertEquals(1000L, count);
+    }
+
+    @Test
+    public void toLong_missingValueIsZero() {
+        assertEquals(0, CounterValues.toLong(null));
+        assertEquals(7, CounterValues.toLong(7L));
+    }
+}
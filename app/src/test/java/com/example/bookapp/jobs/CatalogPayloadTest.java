@@ -0,0 +1,111 @@
+package com.example.bookapp.jobs;
+
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+/**
+ * Bytes of Books that loadAllBooks downloads on a catalog with 100k comments, with comments stored under
+ * Books/&lt;bookId&gt;/Comments (before the move) and under Comments/&lt;bookId&gt; (after). Records are built with the
+ * fields the app writes and measured as the JSON the db sends for them.
+ */
+public class CatalogPayloadTest {
+
+    private static final int BOOKS = 1000;
+    private static final int COMMENTS_PER_BOOK = 100;
+    //Constants.BOOKS_PAGE_SIZE, a page of the All tab
+    private static final int PAGE_SIZE = 20;
+
+    @Test
+    public void loadAllBooks_commentsMoved_downloadsOnlyBooks() {
+        List<Map<String, Object>> before = catalog(true);
+        List<Map<String, Object>> after = catalog(false);
+
+        long pageBefore = bytes(before.subList(0, PAGE_SIZE));
+        long pageAfter = bytes(after.subList(0, PAGE_SIZE));
+        long allBefore = bytes(before);
+        long allAfter = bytes(after);
+        System.out.println("loadAllBooks, " + BOOKS + " books, " + BOOKS * COMMENTS_PER_BOOK + " comments");
+        System.out.println("  first page: " + pageBefore + " bytes before, " + pageAfter + " bytes after");
+        System.out.println("  all pages:  " + allBefore + " bytes before, " + allAfter + " bytes after");
+
+        //a page carries 2,000 comments before the move, none after
+        assertTrue(pageAfter * 20 < pageBefore);
+        assertTrue(allAfter * 20 < allBefore);
+    }
+
+    private static List<Map<String, Object>> catalog(boolean commentsInBooks) {
+        List<Map<String, Object>> books = new ArrayList<>();
+        for (int i = 0; i < BOOKS; i++) {
+            String bookId = "" + (1600000000000L + i * 1000L);
+            Map<String, Object> book = new LinkedHashMap<>();
+            book.put("uid", "kR2v9wXq3bTn8YpLm4Hs7DcEa1F2");
+            book.put("id", bookId);
+            book.put("title", "Book title " + i);
+            book.put("description", "Description of book " + i + ", a sentence or two about what is inside it.");
+            book.put("categoryId", "" + (1500000000000L + i % 10));
+            book.put("url", "https://firebasestorage.googleapis.com/v0/b/bookapp.appspot.com/o/Books%2F" + bookId + "?alt=media&token=3f1c2b7a-8d4e-4f6a-9b0c-1d2e3f4a5b6c");
+            book.put("coverUrl", "https://firebasestorage.googleapis.com/v0/b/bookapp.appspot.com/o/Covers%2F" + bookId + "_small.jpg?alt=media&token=3f1c2b7a-8d4e-4f6a-9b0c-1d2e3f4a5b6c");
+            book.put("coverUrlLarge", "https://firebasestorage.googleapis.com/v0/b/bookapp.appspot.com/o/Covers%2F" + bookId + "_large.jpg?alt=media&token=3f1c2b7a-8d4e-4f6a-9b0c-1d2e3f4a5b6c");
+            book.put("timestamp", Long.parseLong(bookId));
+            book.put("viewsCount", 120L + i);
+            book.put("downloadsCount", 30L + i);
+            book.put("pageCount", 200L);
+            book.put("sizeBytes", 4000000L);
+            if (commentsInBooks) {
+                Map<String, Object> comments = new LinkedHashMap<>();
+                for (int j = 0; j < COMMENTS_PER_BOOK; j++) {
+                    String commentId = "" + (Long.parseLong(bookId) + j + 1);
+                    Map<String, Object> comment = new LinkedHashMap<>();
+                    comment.put("id", commentId);
+                    comment.put("bookId", bookId);
+                    comment.put("timestamp", commentId);
+                    comment.put("comment", "Comment " + j + " on this book, what a reader thought of it.");
+                    comment.put("uid", "pQ7w2eRt5yUi9oPa3sDf6gHj8kL1");
+                    comments.put(commentId, comment);
+                }
+                book.put("Comments", comments);
+            }
+            books.add(book);
+        }
+        return books;
+    }
+
+    private static long bytes(List<Map<String, Object>> books) {
+        Map<String, Object> page = new LinkedHashMap<>();
+        for (Map<String, Object> book : books) {
+            page.put((String) book.get("id"), book);
+        }
+        StringBuilder json = new StringBuilder();
+        appendJson(json, page);
+        return json.toString().getBytes(StandardCharsets.UTF_8).length;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static void appendJson(StringBuilder json, Object value) {
+        if (value instanceof Map) {
+            json.append('{');
+            boolean first = true;
+            for (Map.Entry<String, Object> entry : ((Map<String, Object>) value).entrySet()) {
+                if (!first) {
+                    json.append(',');
+                }
+                first = false;
+                appendJson(json, entry.getKey());
+                json.append(':');
+                appendJson(json, entry.getValue());
+            }
+            json.append('}');
+        } else if (value instanceof String) {
+            json.append('"').append(((String) value).replace("\\", "\\\\").replace("\"", "\\\"")).append('"');
+        } else {
+            json.append(value);
+        }
+    }
+}
@@ -0,0 +1,168 @@
+package com.example.bookapp.upload;
+
+import org.junit.Test;
+
+import java.util.HashMap;
+
+import static org.junit.Assert.*;
+
+/**
+ * Resumable uploads against a local stand-in of storage: an upload that fails partway is resumed from the session
+ * saved through {@link UploadSessionTracker}, and only bytes storage had not confirmed are sent again. Throughput
+ * and bytes resent are measured on a simulated clock.
+ */
+public class UploadSessionTrackerTest {
+
+    private static final long MB = 1024 * 1024;
+    private static final long FILE_BYTES = 40 * MB;
+    //UploadPipeline.SESSION_SAVE_BYTES
+    private static final long SAVE_EVERY_BYTES = MB;
+
+    /*Stand-in of storage resumable uploads
+    * - a session keeps the bytes of every chunk received whole, a chunk cut off by a failure is lost
+    * - an attempt on a session continues at the bytes it kept, like storage answering a session status query
+    * - progress is reported when the session is known and after every kept chunk, time advances with the bytes sent*/
+    private static class LocalStorage {
+
+        static final long CHUNK_BYTES = 256 * 1024;
+        //simulated link speed
+        static final long BYTES_PER_SECOND = 2 * MB;
+
+        private final HashMap<String, Long> sessions = new HashMap<>();
+        private int sessionCount = 0;
+        long nowMs = 0;
+        //bytes received by last attempt, kept or not
+        long receivedBytes = 0;
+
+        //uploads totalBytes on session, a new one when null; fails once failAtBytes were received, -1 never
+        //returns true when storage has the whole file
+        boolean upload(String session, long totalBytes, long failAtBytes, UploadSessionTracker<String> tracker) {
+            if (session == null || !sessions.containsKey(session)) {
+                session = "session-" + (++sessionCount);
+                sessions.put(session, 0L);
+            }
+            receivedBytes = 0;
+            tracker.start(nowMs);
+            long kept = sessions.get(session);
+            tracker.onProgress(session, kept, totalBytes, nowMs);
+            while (kept < totalBytes) {
+                long chunk = Math.min(CHUNK_BYTES, totalBytes - kept);
+                if (failAtBytes >= 0 && kept + chunk > failAtBytes) {
+                    //connection dropped within this chunk
+                    send(failAtBytes - kept);
+                    return false;
+                }
+                send(chunk);
+                kept += chunk;
+                sessions.put(session, kept);
+                tracker.onProgress(session, kept, totalBytes, nowMs);
+            }
+            return true;
+        }
+
+        long keptBytes(String session) {
+            Long kept = sessions.get(session);
+            return kept == null ? 0 : kept;
+        }
+
+        private void send(long bytes) {
+            receivedBytes += bytes;
+            nowMs += bytes * 1000 / BYTES_PER_SECOND;
+        }
+    }
+
+    //what PendingUpload keeps on disk
+    private static class SessionStore implements UploadSessionTracker.Store<String> {
+
+        String session;
+        long confirmedBytes;
+        long totalBytes;
+        int saves = 0;
+
+        @Override
+        public void save(String session, long confirmedBytes, long totalBytes) {
+            this.session = session;
+            this.confirmedBytes = confirmedBytes;
+            this.totalBytes = totalBytes;
+            saves++;
+        }
+    }
+
+    @Test
+    public void failurePartway_resumeSendsOnlyUnconfirmedBytes() {
+        LocalStorage storage = new LocalStorage();
+        SessionStore store = new SessionStore();
+        long failAt = 17 * MB + 300 * 1024;
+
+        UploadSessionTracker<String> first = new UploadSessionTracker<>(store, SAVE_EVERY_BYTES, -1);
+        assertFalse(storage.upload(null, FILE_BYTES, failAt, first));
+        long keptAtFailure = storage.keptBytes(store.session);
+        long lostAtFailure = storage.receivedBytes - keptAtFailure;
+
+        //saved session is at most one save interval behind what storage kept
+        assertNotNull(store.session);
+        assertTrue(store.confirmedBytes <= keptAtFailure);
+        assertTrue(keptAtFailure - store.confirmedBytes < SAVE_EVERY_BYTES);
+
+        //process died, next attempt starts from what was saved
+        UploadSessionTracker<String> resumed = new UploadSessionTracker<>(store, SAVE_EVERY_BYTES, store.confirmedBytes);
+        assertTrue(storage.upload(store.session, FILE_BYTES, -1, resumed));
+
+        assertEquals(FILE_BYTES - keptAtFailure, storage.receivedBytes);
+        assertEquals(keptAtFailure, resumed.getResumedAtBytes());
+        assertEquals(0, resumed.getResentBytes());
+        assertEquals(FILE_BYTES - keptAtFailure, resumed.getSentBytes());
+        //only the chunk cut off by the failure was sent twice
+        assertTrue(lostAtFailure < LocalStorage.CHUNK_BYTES);
+        assertEquals(FILE_BYTES, store.confirmedBytes);
+
+        System.out.println("resume after failure at " + failAt + " bytes: " + lostAtFailure + " bytes sent again, "
+                + resumed.getSentBytes() + " bytes sent by resumed attempt at " + resumed.getBytesPerSecond() / 1024 + " KB/s, "
+                + store.saves + " session saves");
+    }
+
+    @Test
+    public void failureInFirstChunk_resumesFromZero() {
+        LocalStorage storage = new LocalStorage();
+        SessionStore store = new SessionStore();
+
+        UploadSessionTracker<String> first = new UploadSessionTracker<>(store, SAVE_EVERY_BYTES, -1);
+        assertFalse(storage.upload(null, FILE_BYTES, 100 * 1024, first));
+        //session is saved as soon as storage started it, before any chunk was kept
+        assertNotNull(store.session);
+        assertEquals(0, store.confirmedBytes);
+
+        UploadSessionTracker<String> resumed = new UploadSessionTracker<>(store, SAVE_EVERY_BYTES, store.confirmedBytes);
+        assertTrue(storage.upload(store.session, FILE_BYTES, -1, resumed));
+        assertEquals(FILE_BYTES, storage.receivedBytes);
+        assertEquals(0, resumed.getResumedAtBytes());
+        assertEquals(0, resumed.getResentBytes());
+    }
+
+    @Test
+    public void sessionSaves_followSaveInterval() {
+        LocalStorage storage = new LocalStorage();
+        SessionStore store = new SessionStore();
+
+        UploadSessionTracker<String> tracker = new UploadSessionTracker<>(store, SAVE_EVERY_BYTES, -1);
+        assertTrue(storage.upload(null, FILE_BYTES, -1, tracker));
+
+        //start of the session, every MB after it, the last one being the end; not every chunk
+        assertEquals(FILE_BYTES / SAVE_EVERY_BYTES + 1, store.saves);
+        assertEquals(FILE_BYTES, store.confirmedBytes);
+        assertEquals(FILE_BYTES, tracker.getSentBytes());
+        assertEquals(LocalStorage.BYTES_PER_SECOND, tracker.getBytesPerSecond());
+    }
+
+    @Test
+    public void storageKeptLessThanSaved_countsResentBytes() {
+        SessionStore store = new SessionStore();
+        UploadSessionTracker<String> tracker = new UploadSessionTracker<>(store, SAVE_EVERY_BYTES, 10 * MB);
+        tracker.start(0);
+
+        tracker.onProgress("session-1", 9 * MB, FILE_BYTES, 10);
+
+        assertEquals(9 * MB, tracker.getResumedAtBytes());
+        assertEquals(MB, tracker.getResentBytes());
+    }
+}